@@ -24,6 +24,10 @@ public class Commons {
 
 
     public static <T> T getLastElement(final Iterable<T> elements) {
+        if (elements instanceof List) {
+            final List<T> list = (List<T>) elements;
+            return list.get(list.size() - 1);
+        }
         final Iterator<T> itr = elements.iterator();
         T lastElement = itr.next();
 
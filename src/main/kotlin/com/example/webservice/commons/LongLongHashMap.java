@@ -0,0 +1,91 @@
+package com.example.webservice.commons;
+
+import java.util.Arrays;
+
+/*
+ * Open addressing hash map of primitive long keys to long values with linear probing, no boxing and
+ * two flat arrays. Key 0 marks an empty slot and can not be stored. Not thread safe.
+ */
+public class LongLongHashMap {
+    public static final long NO_VALUE = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int threshold;
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR), 8) - 1) << 1;
+        this.allocate(capacity);
+    }
+
+    public long get(long key) {
+        int slot = this.find(key);
+        return this.keys[slot] == 0 ? NO_VALUE : this.values[slot];
+    }
+
+    // returns the previous value or NO_VALUE
+    public long put(long key, long value) {
+        if (key == 0) throw new IllegalArgumentException("Key can not be 0!");
+        int slot = this.find(key);
+        if (this.keys[slot] == key) {
+            long previous = this.values[slot];
+            this.values[slot] = value;
+            return previous;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size > this.threshold) this.allocate(this.keys.length << 1);
+        return NO_VALUE;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int i = 0; i < this.keys.length; i++)
+            if (this.keys[i] != 0) consumer.accept(this.keys[i], this.values[i]);
+    }
+
+    private int find(long key) {
+        int mask = this.keys.length - 1;
+        int slot = mix(key) & mask;
+        while (this.keys[slot] != 0 && this.keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        long[] oldKeys = this.keys;
+        long[] oldValues = this.values;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+        this.size = 0;
+        if (oldKeys == null) return;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != 0) this.put(oldKeys[i], oldValues[i]);
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, 0);
+        this.size = 0;
+    }
+
+    // sequential ids would otherwise fill neighbouring slots and make probe runs long
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, long value);
+    }
+}
@@ -1,8 +1,12 @@
 package com.example.webservice.commons;
 
+import com.example.webservice.exceptions.invalid.InvalidException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 public class PageAttr {
     public static int PAGE_SIZE = 10;
 
@@ -16,4 +20,24 @@ public class PageAttr {
         if (size <= 0) size = 10;
         return PageRequest.of(page, size, Sort.Direction.DESC, PageAttr.SORT_BY_FIELD_ID);
     }
+
+    // keyset pagination: always the first page, the position comes from an `id < after` condition
+    public static PageRequest getSliceRequest(int size) {
+        return getPageRequest(0, size);
+    }
+
+    public static String encodeCursor(Long id) {
+        if (id == null) return null;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // an empty cursor starts from the newest record
+    public static Long decodeCursor(String cursor) throws InvalidException {
+        if (cursor == null || cursor.isEmpty()) return Long.MAX_VALUE;
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidException("Invalid cursor!");
+        }
+    }
 }
@@ -0,0 +1,120 @@
+package com.example.webservice.commons;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Fixed size table of sliding window counters for primitive long keys, lock free. A slot is a key and one long
+ * packing the window number with the counts of that window and the one before, updated with compare and set. The
+ * count over the last window is estimated as the current count plus the previous one weighted by how much of it
+ * still overlaps. Counts saturate at 65535. Lookups probe a few slots, when all of them are taken the key with
+ * the lowest count is replaced, so memory stays the same under a flood of keys and busy keys are kept. A key that
+ * is replaced while it is counted may pass that one count on to its successor. Key 0 can not be stored.
+ */
+public class SlidingWindowCounter {
+    private static final int MAX_PROBES = 8;
+    private static final long COUNT_MASK = 0xFFFF;
+
+    private final long windowMs;
+    private final int mask;
+    private final AtomicLongArray keys;
+    // window << 32 | previous count << 16 | current count
+    private final AtomicLongArray states;
+
+    public SlidingWindowCounter(int capacity, long windowMs) {
+        if (windowMs <= 0) throw new IllegalArgumentException("Window must be positive!");
+        int size = Integer.highestOneBit(Math.max(capacity, MAX_PROBES) - 1) << 1;
+        this.windowMs = windowMs;
+        this.mask = size - 1;
+        this.keys = new AtomicLongArray(size);
+        this.states = new AtomicLongArray(size);
+    }
+
+    // counts one unless the estimate has reached the limit, returns whether it was counted
+    public boolean tryAcquire(long key, int limit, long nowMs) {
+        return this.add(key, limit, nowMs);
+    }
+
+    public void increment(long key, long nowMs) {
+        this.add(key, 0, nowMs);
+    }
+
+    // never inserts, unknown keys are 0
+    public double estimate(long key, long nowMs) {
+        int slot = this.find(key);
+        return slot < 0 ? 0 : this.estimateOf(this.states.get(slot), nowMs);
+    }
+
+    public void reset(long key) {
+        int slot = this.find(key);
+        if (slot >= 0) this.states.set(slot, 0);
+    }
+
+    private boolean add(long key, int limit, long nowMs) {
+        if (key == 0) throw new IllegalArgumentException("Key can not be 0!");
+        int slot = this.findOrInsert(key, nowMs);
+        long window = nowMs / this.windowMs;
+        while (true) {
+            long state = this.states.get(slot);
+            long rolled = this.roll(state, window);
+            if (limit > 0 && this.estimateOf(rolled, nowMs) >= limit) return false;
+            long current = Math.min((rolled & COUNT_MASK) + 1, COUNT_MASK);
+            if (this.states.compareAndSet(slot, state, (rolled & ~COUNT_MASK) | current)) return true;
+        }
+    }
+
+    // the state moved to `window`, the counts of a window that is over become the previous ones
+    private long roll(long state, long window) {
+        int stateWindow = (int) (state >>> 32);
+        if (state != 0 && stateWindow == (int) window) return state;
+        long previous = state != 0 && stateWindow == (int) (window - 1) ? state & COUNT_MASK : 0;
+        return window << 32 | previous << 16;
+    }
+
+    private double estimateOf(long state, long nowMs) {
+        long rolled = this.roll(state, nowMs / this.windowMs);
+        double overlap = (double) (this.windowMs - nowMs % this.windowMs) / this.windowMs;
+        return (rolled & COUNT_MASK) + ((rolled >>> 16) & COUNT_MASK) * overlap;
+    }
+
+    private int find(long key) {
+        int start = mix(key) & this.mask;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = (start + i) & this.mask;
+            long k = this.keys.get(slot);
+            if (k == key) return slot;
+            if (k == 0) return -1;
+        }
+        return -1;
+    }
+
+    private int findOrInsert(long key, long nowMs) {
+        int start = mix(key) & this.mask;
+        while (true) {
+            int victim = -1;
+            double victimCount = Double.MAX_VALUE;
+            for (int i = 0; i < MAX_PROBES; i++) {
+                int slot = (start + i) & this.mask;
+                long k = this.keys.get(slot);
+                if (k == 0 && this.keys.compareAndSet(slot, 0, key)) return slot;
+                // lost the race for an empty slot, it may have been taken by the same key
+                if (k == 0) k = this.keys.get(slot);
+                if (k == key) return slot;
+                double count = this.estimateOf(this.states.get(slot), nowMs);
+                if (count < victimCount) {
+                    victim = slot;
+                    victimCount = count;
+                }
+            }
+            long victimKey = this.keys.get(victim);
+            if (victimKey != key && this.keys.compareAndSet(victim, victimKey, key)) {
+                this.states.set(victim, 0);
+                return victim;
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
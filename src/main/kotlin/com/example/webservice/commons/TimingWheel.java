@@ -0,0 +1,76 @@
+package com.example.webservice.commons;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Hierarchical timing wheel: four levels of 64 buckets, a level covers 64 times the span of the one below, so with
+ * one second ticks level 0 holds the next minute and level 3 about six months. Scheduling is O(1), advancing costs
+ * one bucket per tick. A bucket of a higher level is handed to the consumer when the wheel reaches it, the consumer
+ * schedules again whatever is not due yet and it drops into a lower level. Deadlines beyond the last level come
+ * back when the wheel has turned once. Items fire up to one tick late. Not thread safe.
+ */
+public class TimingWheel<T> {
+    private static final int BITS = 6;
+    private static final int SIZE = 1 << BITS;
+    private static final int MASK = SIZE - 1;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (BITS * LEVELS);
+
+    private final long tickMs;
+    private final List<List<T>> buckets = new ArrayList<>(LEVELS * SIZE);
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMs, long startMs) {
+        if (tickMs <= 0) throw new IllegalArgumentException("Tick must be positive!");
+        this.tickMs = tickMs;
+        this.currentTick = startMs / tickMs;
+        for (int i = 0; i < LEVELS * SIZE; i++) this.buckets.add(null);
+    }
+
+    public void schedule(T item, long deadlineMs) {
+        // rounded up so an item never fires before its deadline
+        long tick = (deadlineMs + this.tickMs - 1) / this.tickMs;
+        if (tick <= this.currentTick) tick = this.currentTick + 1;
+        long delta = tick - this.currentTick;
+        if (delta >= SPAN) tick = this.currentTick + SPAN - 1;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) level++;
+        int index = level * SIZE + (int) ((tick >>> (BITS * level)) & MASK);
+        List<T> bucket = this.buckets.get(index);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            this.buckets.set(index, bucket);
+        }
+        bucket.add(item);
+        this.size++;
+    }
+
+    // hands every item of the buckets passed on the way to nowMs to `due`, which may schedule again
+    public void advance(long nowMs, Consumer<T> due) {
+        long target = nowMs / this.tickMs;
+        while (this.currentTick < target) {
+            this.currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((this.currentTick & ((1L << (BITS * level)) - 1)) != 0) continue;
+                this.fire(level * SIZE + (int) ((this.currentTick >>> (BITS * level)) & MASK), due);
+            }
+            this.fire((int) (this.currentTick & MASK), due);
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    private void fire(int index, Consumer<T> due) {
+        List<T> bucket = this.buckets.get(index);
+        if (bucket == null) return;
+        this.buckets.set(index, null);
+        this.size -= bucket.size();
+        for (T item : bucket) due.accept(item);
+    }
+}
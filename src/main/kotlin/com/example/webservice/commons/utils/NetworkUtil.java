@@ -1,5 +1,7 @@
 package com.example.webservice.commons.utils;
 
+import com.google.common.hash.Hashing;
+import com.google.common.net.InetAddresses;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
@@ -10,6 +12,8 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class NetworkUtil {
     public static String getClientIP() {
@@ -22,6 +26,23 @@ public class NetworkUtil {
         return xfHeader.split(",")[0];
     }
 
+    /*
+     * An address packed into a non zero long for primitive keyed tables. IPv4 addresses are kept whole with bit 32
+     * set, IPv6 addresses are cut to their /64, the smallest block usually given to one subscriber, so rotating
+     * through the addresses of that block counts as one. Anything that does not parse is hashed.
+     */
+    public static long addressKey(String ip) {
+        String address = ip == null ? "" : ip.trim();
+        if (InetAddresses.isInetAddress(address)) {
+            byte[] bytes = InetAddresses.forString(address).getAddress();
+            if (bytes.length == 4) return 1L << 32 | (ByteBuffer.wrap(bytes).getInt() & 0xFFFFFFFFL);
+            long prefix = ByteBuffer.wrap(bytes).getLong();
+            if (prefix != 0) return prefix;
+        }
+        long hash = Hashing.murmur3_128().hashString(address, StandardCharsets.UTF_8).asLong();
+        return hash == 0 ? 1 : hash;
+    }
+
     public static void postData(String url, String body, String authorization) throws IOException {
         new Thread(() -> {
 
@@ -2,6 +2,7 @@ package com.example.webservice.commons.utils;
 
 import com.example.webservice.exceptions.nullpointer.NullPasswordException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
 public class PasswordUtil {
     public static int PASS_MIN_SIZE = 6;
@@ -9,19 +10,30 @@ public class PasswordUtil {
 
     public enum EncType {SHA_ENCODER, BCRYPT_ENCODER}
 
+    private static final BCryptPasswordEncoder BCRYPT_ENCODER = new BCryptPasswordEncoder();
+    // replaced by PasswordHashingService at startup
+    private static volatile PasswordEncoder passwordEncoder = BCRYPT_ENCODER;
+
     public static BCryptPasswordEncoder getBCryptPasswordEncoder() {
-        return new BCryptPasswordEncoder();
+        return BCRYPT_ENCODER;
+    }
+
+    public static PasswordEncoder getPasswordEncoder() {
+        return passwordEncoder;
+    }
+
+    public static void setPasswordEncoder(PasswordEncoder encoder) {
+        if (encoder == null) throw new IllegalArgumentException("Password encoder can not be null!");
+        passwordEncoder = encoder;
     }
 
     public static String encryptPassword(String password, EncType encryptType, String salt) throws NullPasswordException {
         if (password == null) throw new NullPasswordException("Password can not be empty!");
-        if (encryptType.equals(EncType.BCRYPT_ENCODER))
-            return getBCryptPasswordEncoder().encode(password);
-        return getBCryptPasswordEncoder().encode(password);
+        return getPasswordEncoder().encode(password);
     }
 
     public static boolean matches(String existingPassword, String password) throws NullPasswordException {
         if (existingPassword == null || password == null) throw new NullPasswordException("Password can not be empty!");
-        return PasswordUtil.getBCryptPasswordEncoder().matches(password, existingPassword);
+        return getPasswordEncoder().matches(password, existingPassword);
     }
 }
@@ -0,0 +1,33 @@
+package com.example.webservice.commons.utils;
+
+public class PhoneUtil {
+    private PhoneUtil() {
+    }
+
+    // digits only, without the "88" country code: +8801711000000, 8801711000000 and 01711000000 are the same number
+    public static String normalize(String phone) {
+        if (phone == null) return null;
+        StringBuilder digits = new StringBuilder(normalizeDigits(phone));
+        if (digits.length() > 11 && digits.charAt(0) == '8' && digits.charAt(1) == '8')
+            digits.delete(0, 2);
+        return digits.length() == 0 ? null : digits.toString();
+    }
+
+    // the start of a number as it is typed, normalized like a whole one: "+880171" and "0171" are the same prefix.
+    // null when it is not a number. Local numbers start with 0, so a leading "88" is always the country code.
+    public static String normalizePrefix(String prefix) {
+        if (prefix == null || !prefix.trim().matches("\\+?[\\d\\s-]+")) return null;
+        String digits = normalizeDigits(prefix);
+        if (digits.length() > 2 && digits.startsWith("88")) digits = digits.substring(2);
+        return digits.isEmpty() ? null : digits;
+    }
+
+    private static String normalizeDigits(String phone) {
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') digits.append(c);
+        }
+        return digits.toString();
+    }
+}
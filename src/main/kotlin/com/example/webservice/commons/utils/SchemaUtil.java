@@ -0,0 +1,31 @@
+package com.example.webservice.commons.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class SchemaUtil {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SchemaUtil.class);
+
+    private SchemaUtil() {
+    }
+
+    // null when the table does not exist
+    public static String getEngine(JdbcTemplate jdbcTemplate, String table) {
+        return jdbcTemplate.query("SELECT ENGINE FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?",
+                rs -> rs.next() ? rs.getString(1) : null, table);
+    }
+
+    /*
+     * CustomMySQLDialect extends MySQL5Dialect, so tables created by schema update are MyISAM: no transactions,
+     * no partitioning on mysql 8. Rewrites the table once, returns false when it is InnoDB already.
+     */
+    public static boolean convertToInnoDB(JdbcTemplate jdbcTemplate, String table) {
+        String engine = getEngine(jdbcTemplate, table);
+        if (engine == null) throw new IllegalStateException("Table " + table + " does not exist");
+        if ("InnoDB".equalsIgnoreCase(engine)) return false;
+        LOGGER.info("Converting {} from {} to InnoDB", table, engine);
+        jdbcTemplate.execute("ALTER TABLE " + table + " ENGINE=InnoDB");
+        return true;
+    }
+}
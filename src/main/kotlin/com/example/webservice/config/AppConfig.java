@@ -1,45 +1,51 @@
 package com.example.webservice.config;
 
 
-import com.example.webservice.commons.utils.PasswordUtil;
 import com.example.webservice.interceptors.ActivityInterceptor;
+import com.example.webservice.interceptors.AsyncTimeoutInterceptor;
 import com.example.webservice.listeners.AuthenticationFailureEventListener;
 import com.example.webservice.listeners.AuthenticationSuccessEventListener;
 import com.example.webservice.services.impl.CustomUserDetailsService;
+import com.example.webservice.services.impl.PasswordHashingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.web.context.request.RequestContextListener;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
 import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
+@EnableScheduling
 public class AppConfig implements WebMvcConfigurer {
 
     private final AuthenticationSuccessEventListener successEventListener;
     private final AuthenticationFailureEventListener failureEventListener;
     private final ActivityInterceptor activityInterceptor;
     private final CustomUserDetailsService userDetailsService;
+    private final PasswordHashingService passwordHashingService;
 
     @Autowired
-    public AppConfig(AuthenticationSuccessEventListener successEventListener, AuthenticationFailureEventListener failureEventListener, ActivityInterceptor activityInterceptor, CustomUserDetailsService customUserDetailsService) {
+    public AppConfig(AuthenticationSuccessEventListener successEventListener, AuthenticationFailureEventListener failureEventListener, ActivityInterceptor activityInterceptor, CustomUserDetailsService customUserDetailsService, PasswordHashingService passwordHashingService) {
         this.successEventListener = successEventListener;
         this.failureEventListener = failureEventListener;
         this.activityInterceptor = activityInterceptor;
         this.userDetailsService = customUserDetailsService;
+        this.passwordHashingService = passwordHashingService;
     }
 
 
     @Autowired
     public void authenticationManager(AuthenticationManagerBuilder builder) throws Exception {
-        builder.userDetailsService(userDetailsService).passwordEncoder(PasswordUtil.getBCryptPasswordEncoder());
+        builder.userDetailsService(userDetailsService).passwordEncoder(this.passwordHashingService);
     }
 
     @Bean
@@ -89,4 +95,9 @@ public class AppConfig implements WebMvcConfigurer {
         registry.addInterceptor(activityInterceptor);
     }
 
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new AsyncTimeoutInterceptor());
+    }
+
 }
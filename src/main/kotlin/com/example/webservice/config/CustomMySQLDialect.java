@@ -0,0 +1,15 @@
+package com.example.webservice.config;
+
+import org.hibernate.dialect.MySQL5Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+public class CustomMySQLDialect extends MySQL5Dialect {
+
+    public CustomMySQLDialect() {
+        super();
+        // relevance of a boolean mode full text search, the three columns must match a FULLTEXT index exactly
+        this.registerFunction("match_against", new SQLFunctionTemplate(StandardBasicTypes.DOUBLE,
+                "MATCH (?1, ?2, ?3) AGAINST (?4 IN BOOLEAN MODE)"));
+    }
+}
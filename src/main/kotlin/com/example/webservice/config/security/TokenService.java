@@ -1,6 +1,7 @@
 package com.example.webservice.config.security;
 
 import com.example.webservice.commons.Commons;
+import com.example.webservice.config.security.oauth.RevocableJwtTokenStore;
 import com.example.webservice.entities.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -25,18 +26,41 @@ public class TokenService {
     private String clientId;
 
     @Autowired
-    public TokenService(@Qualifier("inMemoryTokenStore") TokenStore tokenStore, AuthorizationServerEndpointsConfiguration configuration) {
+    public TokenService(@Qualifier("tokenStore") TokenStore tokenStore, AuthorizationServerEndpointsConfiguration configuration) {
         this.tokenStore = tokenStore;
         this.configuration = configuration;
     }
 
     public void revokeAuthentication(User user) {
+        if (tokenStore instanceof RevocableJwtTokenStore) {
+            ((RevocableJwtTokenStore) tokenStore).revokeUser(user.getUsername());
+            return;
+        }
         Collection<OAuth2AccessToken> tokens = tokenStore.findTokensByClientIdAndUserName(clientId, user.getUsername());
         for (OAuth2AccessToken token : tokens) {
-            revokeToken(token.getValue());
+            revokeToken(token);
         }
     }
 
+    // one lookup per username and no re-reading of the tokens found, returns the number of access tokens removed,
+    // with signed tokens, which cannot be listed, the number of users whose tokens were revoked
+    public int revokeAuthentications(Collection<String> usernames) {
+        int revoked = 0;
+        for (String username : usernames) {
+            if (username == null) continue;
+            if (tokenStore instanceof RevocableJwtTokenStore) {
+                ((RevocableJwtTokenStore) tokenStore).revokeUser(username);
+                revoked++;
+                continue;
+            }
+            for (OAuth2AccessToken token : new ArrayList<>(tokenStore.findTokensByClientIdAndUserName(clientId, username))) {
+                revokeToken(token);
+                revoked++;
+            }
+        }
+        return revoked;
+    }
+
     public OAuth2AccessToken createAccessToken(User user) {
 
         Map<String, String> requestParameters = new HashMap<>();
@@ -65,16 +89,11 @@ public class TokenService {
         return null;
     }
 
-    private boolean revokeToken(String tokenValue) {
-        OAuth2AccessToken accessToken = tokenStore.readAccessToken(tokenValue);
-        if (accessToken == null) {
-            return false;
-        }
+    private void revokeToken(OAuth2AccessToken accessToken) {
         if (accessToken.getRefreshToken() != null) {
             tokenStore.removeRefreshToken(accessToken.getRefreshToken());
         }
         tokenStore.removeAccessToken(accessToken);
-        return true;
     }
 
 }
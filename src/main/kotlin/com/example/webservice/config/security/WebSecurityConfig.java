@@ -1,8 +1,8 @@
 package com.example.webservice.config.security;
 
-import com.example.webservice.commons.utils.PasswordUtil;
 import com.example.webservice.entities.Role;
 import com.example.webservice.services.impl.CustomUserDetailsService;
+import com.example.webservice.services.impl.PasswordHashingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,10 +19,12 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 public class WebSecurityConfig extends WebSecurityConfigurerAdapter implements SecurityConfig {
 
     private final CustomUserDetailsService userDetailsService;
+    private final PasswordHashingService passwordHashingService;
 
     @Autowired
-    public WebSecurityConfig(CustomUserDetailsService userDetailsService) {
+    public WebSecurityConfig(CustomUserDetailsService userDetailsService, PasswordHashingService passwordHashingService) {
         this.userDetailsService = userDetailsService;
+        this.passwordHashingService = passwordHashingService;
     }
 
     @Bean
@@ -92,7 +94,7 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter implements S
 //                .inMemoryAuthentication()
 //                .withUser("admin").password("pass").roles("USER","HOTEL","ADMIN");
                 .userDetailsService(this.userDetailsService)
-                .passwordEncoder(PasswordUtil.getBCryptPasswordEncoder());
+                .passwordEncoder(this.passwordHashingService);
     }
 
 
@@ -3,46 +3,89 @@ package com.example.webservice.config.security.oauth;
 import com.example.webservice.commons.utils.PasswordUtil;
 import com.example.webservice.exceptions.nullpointer.NullPasswordException;
 import com.example.webservice.services.impl.CustomUserDetailsService;
+import com.example.webservice.services.impl.PasswordHashingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.config.annotation.ObjectPostProcessor;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.client.ClientCredentialsTokenEndpointFilter;
+import org.springframework.security.oauth2.provider.error.OAuth2AuthenticationEntryPoint;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
 import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.util.Arrays;
 
 @Configuration
 @EnableAuthorizationServer
 public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdapter {
+    private static final int REFRESH_TOKEN_VALIDITY_SECONDS = 1209600;
     @Value("${app.client.id}")
     private String clientId;
     @Value("${app.client.secret}")
     private String clientSecret;
     @Value("${app.loginEndpoint}")
     private String loginEndpoint;
+    @Value("${app.tokenStore:sharded}")
+    private String tokenStoreType;
+    @Value("${app.tokenStore.shards:64}")
+    private int tokenStoreShards;
+    @Value("${app.tokenStore.tickMs:1000}")
+    private long tokenStoreTickMs;
+    @Value("${app.tokenStore.cache.maxSize:100000}")
+    private int tokenStoreCacheMaxSize;
+    @Value("${app.tokenStore.cache.ttlSeconds:60}")
+    private long tokenStoreCacheTtlSeconds;
+    @Value("${app.jwt.signingKey:}")
+    private String jwtSigningKey;
     private final CustomUserDetailsService userDetailsService;
     private final AuthenticationManager authenticationManager;
+    private final PasswordHashingService passwordHashingService;
+    private final JdbcTemplate jdbcTemplate;
 
     @Autowired
-    public AuthorizationServerConfig(CustomUserDetailsService userDetailsService, AuthenticationManager authenticationManager) {
+    public AuthorizationServerConfig(CustomUserDetailsService userDetailsService, AuthenticationManager authenticationManager, PasswordHashingService passwordHashingService, JdbcTemplate jdbcTemplate) {
         this.userDetailsService = userDetailsService;
         this.authenticationManager = authenticationManager;
+        this.passwordHashingService = passwordHashingService;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     @Override
     public void configure(AuthorizationServerSecurityConfigurer security) throws Exception {
-        security.passwordEncoder(PasswordUtil.getBCryptPasswordEncoder())
+        // client secrets are checked with the same hashing pool, a busy pool is reported as 503 here too
+        security.addObjectPostProcessor(new ObjectPostProcessor<ClientCredentialsTokenEndpointFilter>() {
+            @Override
+            public <O extends ClientCredentialsTokenEndpointFilter> O postProcess(O filter) {
+                filter.setAuthenticationEntryPoint(entryPoint("Form"));
+                return filter;
+            }
+        });
+        security.authenticationEntryPoint(entryPoint("Basic"))
+                .passwordEncoder(this.passwordHashingService)
                 .tokenKeyAccess("permitAll()")
                 .checkTokenAccess("isAuthenticated()")
                 .allowFormAuthenticationForClients();
     }
 
+    private static OAuth2AuthenticationEntryPoint entryPoint(String typeName) {
+        OAuth2AuthenticationEntryPoint entryPoint = new OAuth2AuthenticationEntryPoint();
+        entryPoint.setTypeName(typeName);
+        entryPoint.setRealmName("oauth2/client");
+        entryPoint.setExceptionTranslator(new OAuthExceptionTranslator());
+        return entryPoint;
+    }
+
     @Override
     public void configure(ClientDetailsServiceConfigurer clients) throws Exception {
         try {
@@ -54,7 +97,7 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
                     .scopes("read", "write", "trust")
                     .resourceIds("oauth2-resource")
                     .accessTokenValiditySeconds(20000)
-                    .secret(PasswordUtil.encryptPassword(this.clientSecret, PasswordUtil.EncType.BCRYPT_ENCODER, null)).refreshTokenValiditySeconds(1209600);
+                    .secret(PasswordUtil.encryptPassword(this.clientSecret, PasswordUtil.EncType.BCRYPT_ENCODER, null)).refreshTokenValiditySeconds(REFRESH_TOKEN_VALIDITY_SECONDS);
         } catch (NullPasswordException e) {
             e.printStackTrace();
         }
@@ -62,17 +105,34 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
 
     @Override
     public void configure(AuthorizationServerEndpointsConfigurer endpoints) throws Exception {
+        TokenStore tokenStore = tokenStore();
         endpoints.authenticationManager(this.authenticationManager).userDetailsService(this.userDetailsService)
                 .pathMapping("/oauth/token", this.loginEndpoint)
                 .allowedTokenEndpointRequestMethods(HttpMethod.GET, HttpMethod.POST)
-                .tokenStore(inMemoryTokenStore())
-                .tokenEnhancer(new CustomTokenEnhancer());
+                .tokenStore(tokenStore)
+                .tokenEnhancer(new CustomTokenEnhancer())
+                .exceptionTranslator(new OAuthExceptionTranslator());
+        if (tokenStore instanceof RevocableJwtTokenStore) {
+            // the claims of CustomTokenEnhancer go into the signed token
+            JwtAccessTokenConverter converter = ((RevocableJwtTokenStore) tokenStore).getAccessTokenConverter();
+            TokenEnhancerChain chain = new TokenEnhancerChain();
+            chain.setTokenEnhancers(Arrays.asList(new CustomTokenEnhancer(), converter));
+            endpoints.tokenEnhancer(chain).accessTokenConverter(converter);
+        }
     }
 
 
+    // shutdown of ShardedTokenStore is picked up as the destroy method, DatabaseTokenStore flushes on @PreDestroy
     @Bean
-    public TokenStore inMemoryTokenStore() {
-        return new InMemoryTokenStore();
+    public TokenStore tokenStore() {
+        if ("memory".equals(this.tokenStoreType)) return new InMemoryTokenStore();
+        if ("jdbc".equals(this.tokenStoreType))
+            return new DatabaseTokenStore(this.jdbcTemplate, this.tokenStoreCacheMaxSize, this.tokenStoreCacheTtlSeconds);
+        if ("jwt".equals(this.tokenStoreType)) {
+            if (this.jwtSigningKey.trim().isEmpty()) throw new IllegalStateException("app.jwt.signingKey is required for app.tokenStore=jwt");
+            return new RevocableJwtTokenStore(this.jwtSigningKey, this.jdbcTemplate, REFRESH_TOKEN_VALIDITY_SECONDS);
+        }
+        return new ShardedTokenStore(this.tokenStoreShards, this.tokenStoreTickMs);
     }
 
 //    @Bean
@@ -0,0 +1,382 @@
+package com.example.webservice.config.security.oauth;
+
+import com.example.webservice.entities.Role;
+import com.example.webservice.entities.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import javax.annotation.PreDestroy;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * TokenStore in mysql, so tokens survive restarts and every node sees the same ones. Rows are keyed by the sha-256
+ * of the token value and looked up through indexes on the authentication key, client and user and refresh token.
+ * Access tokens read by the resource server are cached for a short time, a token revoked on another node is still
+ * accepted here until its cache entry expires. The last use of a token is kept in memory and written in batches.
+ * Expired rows are deleted periodically. The user principal is stored as a small versioned StoredPrincipal, not the
+ * entity, so changes to User and its entities do not make stored tokens unreadable. It is read back as a detached
+ * User, as JwtUserAuthenticationConverter does for signed tokens.
+ */
+public class DatabaseTokenStore implements TokenStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseTokenStore.class);
+    private static final String ACCESS_TABLE = "oauth_access_tokens";
+    private static final String REFRESH_TABLE = "oauth_refresh_tokens";
+    private static final int PURGE_BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+    private final Cache<String, AccessEntry> accessTokens;
+    // token hash to the time it was last read, written by flushLastUsed
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+
+    public DatabaseTokenStore(JdbcTemplate jdbcTemplate, int cacheMaxSize, long cacheTtlSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.accessTokens = CacheBuilder.newBuilder().maximumSize(cacheMaxSize).expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS).build();
+        this.createTables();
+    }
+
+    private void createTables() {
+        this.jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + ACCESS_TABLE + " (" +
+                "token_id CHAR(64) NOT NULL PRIMARY KEY, " +
+                "authentication_id CHAR(32) NOT NULL, " +
+                "client_id VARCHAR(255) NOT NULL, " +
+                "user_name VARCHAR(255) NULL, " +
+                "refresh_token CHAR(64) NULL, " +
+                "token MEDIUMBLOB NOT NULL, " +
+                "authentication MEDIUMBLOB NOT NULL, " +
+                "created DATETIME(3) NOT NULL, " +
+                "expires_at DATETIME NULL, " +
+                "last_used DATETIME NULL, " +
+                "KEY idx_oauth_access_authentication (authentication_id), " +
+                "KEY idx_oauth_access_client_user (client_id, user_name, created), " +
+                "KEY idx_oauth_access_refresh (refresh_token), " +
+                "KEY idx_oauth_access_expires (expires_at)) ENGINE=InnoDB");
+        this.jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + REFRESH_TABLE + " (" +
+                "token_id CHAR(64) NOT NULL PRIMARY KEY, " +
+                "token MEDIUMBLOB NOT NULL, " +
+                "authentication MEDIUMBLOB NOT NULL, " +
+                "expires_at DATETIME NULL, " +
+                "KEY idx_oauth_refresh_expires (expires_at)) ENGINE=InnoDB");
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return this.readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        AccessEntry entry = this.findAccess(extractTokenKey(token));
+        return entry == null ? null : entry.authentication;
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        String tokenKey = extractTokenKey(token.getValue());
+        String refreshKey = token.getRefreshToken() == null ? null : extractTokenKey(token.getRefreshToken().getValue());
+        this.removeAccessToken(tokenKey);
+        this.jdbcTemplate.update("INSERT INTO " + ACCESS_TABLE + " (token_id, authentication_id, client_id, user_name, " +
+                        "refresh_token, token, authentication, created, expires_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                tokenKey, this.authenticationKeyGenerator.extractKey(authentication), authentication.getOAuth2Request().getClientId(),
+                authentication.isClientOnly() ? null : authentication.getName(), refreshKey,
+                SerializationUtils.serialize(token), serializeAuthentication(authentication),
+                new Timestamp(System.currentTimeMillis()), timestampOf(token.getExpiration()));
+        this.accessTokens.put(tokenKey, new AccessEntry(token, authentication));
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        String tokenKey = extractTokenKey(tokenValue);
+        AccessEntry entry = this.findAccess(tokenKey);
+        if (entry == null) return null;
+        this.lastUsed.put(tokenKey, System.currentTimeMillis());
+        return entry.token;
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        this.removeAccessToken(extractTokenKey(token.getValue()));
+    }
+
+    private void removeAccessToken(String tokenKey) {
+        this.accessTokens.invalidate(tokenKey);
+        this.lastUsed.remove(tokenKey);
+        this.jdbcTemplate.update("DELETE FROM " + ACCESS_TABLE + " WHERE token_id = ?", tokenKey);
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        Date expiration = refreshToken instanceof ExpiringOAuth2RefreshToken ? ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() : null;
+        this.jdbcTemplate.update("REPLACE INTO " + REFRESH_TABLE + " (token_id, token, authentication, expires_at) VALUES (?, ?, ?, ?)",
+                extractTokenKey(refreshToken.getValue()), SerializationUtils.serialize(refreshToken),
+                serializeAuthentication(authentication), timestampOf(expiration));
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        String tokenKey = extractTokenKey(tokenValue);
+        try {
+            return this.jdbcTemplate.queryForObject("SELECT token FROM " + REFRESH_TABLE + " WHERE token_id = ?",
+                    (rs, rowNum) -> SerializationUtils.<OAuth2RefreshToken>deserialize(rs.getBytes(1)), tokenKey);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Could not read refresh token " + tokenKey + ", removing it", e);
+            this.removeRefreshToken(tokenKey);
+            return null;
+        }
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        String tokenKey = extractTokenKey(token.getValue());
+        try {
+            return this.jdbcTemplate.queryForObject("SELECT authentication FROM " + REFRESH_TABLE + " WHERE token_id = ?",
+                    (rs, rowNum) -> deserializeAuthentication(rs.getBytes(1)), tokenKey);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Could not read authentication of refresh token " + tokenKey + ", removing it", e);
+            this.removeRefreshToken(tokenKey);
+            return null;
+        }
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        this.removeRefreshToken(extractTokenKey(token.getValue()));
+    }
+
+    private void removeRefreshToken(String tokenKey) {
+        this.jdbcTemplate.update("DELETE FROM " + REFRESH_TABLE + " WHERE token_id = ?", tokenKey);
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        List<String> tokenKeys = this.jdbcTemplate.queryForList("SELECT token_id FROM " + ACCESS_TABLE + " WHERE refresh_token = ?",
+                String.class, extractTokenKey(refreshToken.getValue()));
+        for (String tokenKey : tokenKeys) this.removeAccessToken(tokenKey);
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        String key = this.authenticationKeyGenerator.extractKey(authentication);
+        List<AccessEntry> entries = this.queryAccess("WHERE authentication_id = ? ORDER BY created DESC LIMIT 1", key);
+        if (entries.isEmpty()) return null;
+        AccessEntry entry = entries.get(0);
+        // same as JdbcTokenStore: the stored authentication may have been created with other details
+        if (!key.equals(this.authenticationKeyGenerator.extractKey(entry.authentication)))
+            this.storeAccessToken(entry.token, authentication);
+        return entry.token;
+    }
+
+    // oldest first, so the newest is the last element
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return this.tokensOf(this.queryAccess("WHERE client_id = ? AND user_name = ? ORDER BY created", clientId, userName));
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return this.tokensOf(this.queryAccess("WHERE client_id = ? ORDER BY created", clientId));
+    }
+
+    @Scheduled(fixedDelayString = "${app.tokenStore.lastUsed.flushIntervalMs:30000}")
+    @PreDestroy
+    public void flushLastUsed() {
+        if (this.lastUsed.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : this.lastUsed.entrySet()) {
+            // a newer read in between stays for the next flush
+            if (this.lastUsed.remove(entry.getKey(), entry.getValue()))
+                args.add(new Object[]{new Timestamp(entry.getValue()), entry.getKey()});
+        }
+        try {
+            this.jdbcTemplate.batchUpdate("UPDATE " + ACCESS_TABLE + " SET last_used = ? WHERE token_id = ?", args);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not write last use of " + args.size() + " tokens", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.tokenStore.purgeIntervalMs:3600000}")
+    public void purgeExpired() {
+        try {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            int removed = this.purge(ACCESS_TABLE, now) + this.purge(REFRESH_TABLE, now);
+            if (removed > 0) LOGGER.info("Removed {} expired tokens", removed);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not remove expired tokens", e);
+        }
+    }
+
+    // in batches so a large backlog does not hold locks for long, cached copies expire on their own
+    private int purge(String table, Timestamp now) {
+        int removed = 0;
+        int deleted;
+        do {
+            deleted = this.jdbcTemplate.update("DELETE FROM " + table + " WHERE expires_at < ? LIMIT " + PURGE_BATCH_SIZE, now);
+            removed += deleted;
+        } while (deleted == PURGE_BATCH_SIZE);
+        return removed;
+    }
+
+    private AccessEntry findAccess(String tokenKey) {
+        AccessEntry entry = this.accessTokens.getIfPresent(tokenKey);
+        if (entry != null) return entry;
+        // misses are not cached, a token stored on another node has to be found as soon as it is used
+        List<AccessEntry> entries = this.queryAccess("WHERE token_id = ?", tokenKey);
+        if (entries.isEmpty()) return null;
+        entry = entries.get(0);
+        this.accessTokens.put(tokenKey, entry);
+        return entry;
+    }
+
+    private List<AccessEntry> queryAccess(String where, Object... args) {
+        List<String> unreadable = new ArrayList<>();
+        List<AccessEntry> entries = this.jdbcTemplate.query("SELECT token_id, token, authentication FROM " + ACCESS_TABLE + " " + where, rs -> {
+            List<AccessEntry> result = new ArrayList<>();
+            while (rs.next()) {
+                try {
+                    result.add(new AccessEntry(SerializationUtils.deserialize(rs.getBytes(2)), deserializeAuthentication(rs.getBytes(3))));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warn("Could not read access token " + rs.getString(1) + ", removing it", e);
+                    unreadable.add(rs.getString(1));
+                }
+            }
+            return result;
+        }, args);
+        for (String tokenKey : unreadable) this.removeAccessToken(tokenKey);
+        return entries;
+    }
+
+    private List<OAuth2AccessToken> tokensOf(List<AccessEntry> entries) {
+        List<OAuth2AccessToken> tokens = new ArrayList<>(entries.size());
+        for (AccessEntry entry : entries) tokens.add(entry.token);
+        return tokens;
+    }
+
+    private static String extractTokenKey(String value) {
+        return Hashing.sha256().hashString(value, StandardCharsets.UTF_8).toString();
+    }
+
+    private static byte[] serializeAuthentication(OAuth2Authentication authentication) {
+        Authentication userAuthentication = authentication.getUserAuthentication();
+        if (userAuthentication == null || !(userAuthentication.getPrincipal() instanceof User))
+            return SerializationUtils.serialize(authentication);
+        User user = (User) userAuthentication.getPrincipal();
+        List<String> authorities = new ArrayList<>();
+        for (GrantedAuthority authority : userAuthentication.getAuthorities()) authorities.add(authority.getAuthority());
+        StoredPrincipal principal = new StoredPrincipal(user.getId(), user.getUsername(), user.getName(), user.getPhoneNumber(), authorities);
+        UsernamePasswordAuthenticationToken stored = new UsernamePasswordAuthenticationToken(principal, null, authoritiesOf(authorities));
+        stored.setDetails(detailsOf(userAuthentication.getDetails()));
+        return SerializationUtils.serialize(new OAuth2Authentication(authentication.getOAuth2Request(), stored));
+    }
+
+    // unreadable rows, including those of a newer StoredPrincipal version, fail with IllegalArgumentException and are removed
+    private static OAuth2Authentication deserializeAuthentication(byte[] bytes) {
+        OAuth2Authentication authentication = SerializationUtils.deserialize(bytes);
+        Authentication userAuthentication = authentication.getUserAuthentication();
+        if (userAuthentication == null || !(userAuthentication.getPrincipal() instanceof StoredPrincipal))
+            return authentication;
+        StoredPrincipal principal = (StoredPrincipal) userAuthentication.getPrincipal();
+        if (principal.version > StoredPrincipal.VERSION)
+            throw new IllegalArgumentException("Unknown principal version " + principal.version);
+        User user = new User();
+        user.setId(principal.id);
+        user.setUsername(principal.username);
+        user.setName(principal.name);
+        user.setPhoneNumber(principal.phone);
+        int roleMask = 0;
+        for (String authority : principal.authorities) {
+            Role.ERole eRole = Role.findERole(authority);
+            if (eRole != null) roleMask |= Role.maskOf(eRole);
+        }
+        user.setRoleMask(roleMask);
+        UsernamePasswordAuthenticationToken restored = new UsernamePasswordAuthenticationToken(user, "N/A", user.getAuthorities());
+        restored.setDetails(userAuthentication.getDetails());
+        return new OAuth2Authentication(authentication.getOAuth2Request(), restored);
+    }
+
+    private static List<GrantedAuthority> authoritiesOf(List<String> authorities) {
+        List<GrantedAuthority> result = new ArrayList<>(authorities.size());
+        for (String authority : authorities) result.add(new SimpleGrantedAuthority(authority));
+        return result;
+    }
+
+    // the password grant keeps the request parameters as details, anything else is not needed after login
+    private static Serializable detailsOf(Object details) {
+        if (!(details instanceof Map)) return null;
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) details).entrySet())
+            parameters.put(String.valueOf(entry.getKey()), entry.getValue() == null ? null : String.valueOf(entry.getValue()));
+        return parameters;
+    }
+
+    private static Timestamp timestampOf(Date date) {
+        return date == null ? null : new Timestamp(date.getTime());
+    }
+
+    /*
+     * What is kept of the user with a stored token. Only add fields, with a default for rows written without them,
+     * and raise VERSION when their meaning changes; serialVersionUID stays 1 so every version can be read.
+     */
+    private static final class StoredPrincipal implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final int VERSION = 1;
+
+        private final int version;
+        private final Long id;
+        private final String username;
+        private final String name;
+        private final String phone;
+        private final ArrayList<String> authorities;
+
+        private StoredPrincipal(Long id, String username, String name, String phone, List<String> authorities) {
+            this.version = VERSION;
+            this.id = id;
+            this.username = username;
+            this.name = name;
+            this.phone = phone;
+            this.authorities = new ArrayList<>(authorities);
+        }
+
+        // the authentication key of a stored token is computed from the name
+        @Override
+        public String toString() {
+            return this.username;
+        }
+    }
+
+    private static final class AccessEntry {
+        private final OAuth2AccessToken token;
+        private final OAuth2Authentication authentication;
+
+        private AccessEntry(OAuth2AccessToken token, OAuth2Authentication authentication) {
+            this.token = token;
+            this.authentication = authentication;
+        }
+    }
+}
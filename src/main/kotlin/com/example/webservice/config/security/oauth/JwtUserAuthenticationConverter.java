@@ -0,0 +1,61 @@
+package com.example.webservice.config.security.oauth;
+
+import com.example.webservice.entities.Role;
+import com.example.webservice.entities.User;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultUserAuthenticationConverter;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Rebuilds the user principal of a signed token from the claims CustomTokenEnhancer adds, so the resource server
+ * needs neither a token store nor a user query. The principal is detached and has no roles, only the role mask
+ * taken from the authorities, which is what role checks and getAuthorities read.
+ */
+public class JwtUserAuthenticationConverter extends DefaultUserAuthenticationConverter {
+    static final String ISSUED_AT = "iat";
+
+    @Override
+    public Map<String, ?> convertUserAuthentication(Authentication authentication) {
+        Map<String, Object> claims = new LinkedHashMap<>(super.convertUserAuthentication(authentication));
+        // seconds, compared with the not-before of users whose tokens were revoked
+        claims.put(ISSUED_AT, System.currentTimeMillis() / 1000);
+        return claims;
+    }
+
+    @Override
+    public Authentication extractAuthentication(Map<String, ?> map) {
+        if (!map.containsKey(USERNAME)) return null;
+        User user = new User();
+        Object id = map.get("id");
+        if (id instanceof Number) user.setId(((Number) id).longValue());
+        Object username = map.get("username");
+        user.setUsername(username == null ? String.valueOf(map.get(USERNAME)) : username.toString());
+        if (map.get("name") != null) user.setName(map.get("name").toString());
+        if (map.get("phone") != null) user.setPhoneNumber(map.get("phone").toString());
+        user.setRoleMask(roleMaskOf(map.get(AUTHORITIES)));
+        return new UsernamePasswordAuthenticationToken(user, "N/A", user.getAuthorities());
+    }
+
+    // CustomTokenEnhancer writes the authorities as objects, {"authority": "ROLE_USER"}, plain names are read as well
+    private static int roleMaskOf(Object authorities) {
+        int mask = 0;
+        if (authorities instanceof String) {
+            for (String authority : ((String) authorities).split(",")) mask |= maskOf(authority);
+        } else if (authorities instanceof Collection) {
+            for (Object authority : (Collection<?>) authorities) {
+                if (authority instanceof Map) authority = ((Map<?, ?>) authority).get("authority");
+                if (authority != null) mask |= maskOf(authority.toString());
+            }
+        }
+        return mask;
+    }
+
+    private static int maskOf(String authority) {
+        Role.ERole eRole = Role.findERole(authority);
+        return eRole == null ? 0 : Role.maskOf(eRole);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.webservice.config.security.oauth;
+
+import com.example.webservice.exceptions.limitExceed.PasswordHashingBusyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+
+/*
+ * Errors of the token endpoint and of client authentication. A login turned away because password hashing is busy
+ * is answered with 503 temporarily_unavailable so clients retry instead of treating it as wrong credentials.
+ */
+public class OAuthExceptionTranslator extends DefaultWebResponseExceptionTranslator {
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    @Override
+    public ResponseEntity<OAuth2Exception> translate(Exception e) throws Exception {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (!(cause instanceof PasswordHashingBusyException)) continue;
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.CACHE_CONTROL, "no-store");
+            headers.set(HttpHeaders.PRAGMA, "no-cache");
+            headers.set(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            return new ResponseEntity<>(new TemporarilyUnavailableException(cause.getMessage()), headers, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return super.translate(e);
+    }
+
+    private static final class TemporarilyUnavailableException extends OAuth2Exception {
+        private TemporarilyUnavailableException(String message) {
+            super(message);
+        }
+
+        @Override
+        public String getOAuth2ErrorCode() {
+            return "temporarily_unavailable";
+        }
+
+        @Override
+        public int getHttpErrorCode() {
+            return HttpStatus.SERVICE_UNAVAILABLE.value();
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
                 .permitAll()
                 .antMatchers(
                         "/api/v1/search/users",
+                        "/api/v1/users/suggest",
                         "/api/v1/stats/employee"
                 )
                 .hasAnyAuthority(Role.StringRole.ROLE_ADMIN)
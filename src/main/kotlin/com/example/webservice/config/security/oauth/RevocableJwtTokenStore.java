@@ -0,0 +1,184 @@
+package com.example.webservice.config.security.oauth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.UserAuthenticationConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Signed tokens verified locally, with revocation on top of JwtTokenStore. Single tokens are denied by their jti
+ * until they expire. Revoking a user sets a not-before, any token of the user issued up to that second is rejected
+ * for as long as a token may live. Both live in memory for the checks and in oauth_revoked_tokens, from which every
+ * node picks up the revocations of the others within a sync interval.
+ */
+public class RevocableJwtTokenStore extends JwtTokenStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RevocableJwtTokenStore.class);
+    private static final String TABLE = "oauth_revoked_tokens";
+    private static final String TOKEN_PREFIX = "t:";
+    private static final String USER_PREFIX = "u:";
+    // rows written by other nodes just before the last sync, or with a clock slightly behind, are read again
+    private static final long SYNC_OVERLAP_MS = 60000;
+
+    private final ClaimsConverter converter;
+    private final JdbcTemplate jdbcTemplate;
+    private final long maxValidityMs;
+    // jti to the time the token expires
+    private final Map<String, Long> deniedTokens = new ConcurrentHashMap<>();
+    // username to the time its tokens were revoked
+    private final Map<String, Long> notBefore = new ConcurrentHashMap<>();
+    private volatile long lastSync;
+
+    public RevocableJwtTokenStore(String signingKey, JdbcTemplate jdbcTemplate, long maxValiditySeconds) {
+        this(converterOf(signingKey), jdbcTemplate, maxValiditySeconds);
+    }
+
+    private RevocableJwtTokenStore(ClaimsConverter converter, JdbcTemplate jdbcTemplate, long maxValiditySeconds) {
+        super(converter);
+        this.converter = converter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxValidityMs = maxValiditySeconds * 1000;
+        this.jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                "revoked_id VARCHAR(255) NOT NULL PRIMARY KEY, " +
+                "revoked_at BIGINT NOT NULL, " +
+                "expires_at BIGINT NOT NULL, " +
+                "KEY idx_oauth_revoked_at (revoked_at), " +
+                "KEY idx_oauth_revoked_expires (expires_at)) ENGINE=InnoDB");
+        this.sync();
+    }
+
+    private static ClaimsConverter converterOf(String signingKey) {
+        DefaultAccessTokenConverter accessTokenConverter = new DefaultAccessTokenConverter();
+        accessTokenConverter.setUserTokenConverter(new JwtUserAuthenticationConverter());
+        ClaimsConverter converter = new ClaimsConverter();
+        converter.setAccessTokenConverter(accessTokenConverter);
+        converter.setSigningKey(signingKey);
+        try {
+            converter.afterPropertiesSet();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not set up token signing", e);
+        }
+        return converter;
+    }
+
+    // signs the tokens as the last enhancer, see AuthorizationServerConfig
+    public JwtAccessTokenConverter getAccessTokenConverter() {
+        return this.converter;
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        OAuth2AccessToken token = super.readAccessToken(tokenValue);
+        return token == null || this.isRevoked(token.getAdditionalInformation()) ? null : token;
+    }
+
+    // DefaultTokenServices reads the token first, this only covers callers holding a token that was revoked since
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return this.isRevoked(token.getAdditionalInformation()) ? null : super.readAuthentication(token);
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return this.isRevoked(this.converter.decode(tokenValue)) ? null : super.readRefreshToken(tokenValue);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        Object jti = token.getAdditionalInformation().get(AccessTokenConverter.JTI);
+        long expiresAt = token.getExpiration() == null ? System.currentTimeMillis() + this.maxValidityMs : token.getExpiration().getTime();
+        if (jti != null) this.denyToken(jti.toString(), expiresAt);
+        super.removeAccessToken(token);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        Map<String, Object> claims = this.converter.decode(token.getValue());
+        if (claims.get(AccessTokenConverter.JTI) != null)
+            this.denyToken(claims.get(AccessTokenConverter.JTI).toString(), this.expiresAtOf(claims));
+        super.removeRefreshToken(token);
+    }
+
+    // the access token issued with a refresh token is named by its ati claim
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        Map<String, Object> claims = this.converter.decode(refreshToken.getValue());
+        if (claims.get(AccessTokenConverter.ATI) != null)
+            this.denyToken(claims.get(AccessTokenConverter.ATI).toString(), this.expiresAtOf(claims));
+    }
+
+    // rejects every access and refresh token of the user issued so far
+    public void revokeUser(String username) {
+        long now = System.currentTimeMillis();
+        this.notBefore.merge(username, now, Math::max);
+        this.write(USER_PREFIX + username, now, now + this.maxValidityMs);
+    }
+
+    public int getDeniedTokenCount() {
+        return this.deniedTokens.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.denylist.syncIntervalMs:5000}")
+    public void sync() {
+        long now = System.currentTimeMillis();
+        try {
+            this.jdbcTemplate.query("SELECT revoked_id, revoked_at, expires_at FROM " + TABLE + " WHERE revoked_at >= ? AND expires_at > ?", rs -> {
+                String id = rs.getString(1);
+                if (id.startsWith(TOKEN_PREFIX))
+                    this.deniedTokens.merge(id.substring(TOKEN_PREFIX.length()), rs.getLong(3), Math::max);
+                else if (id.startsWith(USER_PREFIX))
+                    this.notBefore.merge(id.substring(USER_PREFIX.length()), rs.getLong(2), Math::max);
+            }, this.lastSync == 0 ? 0 : this.lastSync - SYNC_OVERLAP_MS, now);
+            this.lastSync = now;
+            this.jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE expires_at < ? LIMIT 1000", now);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not sync revoked tokens", e);
+        }
+        this.deniedTokens.values().removeIf(expiresAt -> expiresAt < now);
+        this.notBefore.values().removeIf(revokedAt -> revokedAt + this.maxValidityMs < now);
+    }
+
+    private boolean isRevoked(Map<String, ?> claims) {
+        Object jti = claims.get(AccessTokenConverter.JTI);
+        if (jti != null && this.deniedTokens.containsKey(jti.toString())) return true;
+        Object username = claims.get(UserAuthenticationConverter.USERNAME);
+        Long revokedAt = username == null ? null : this.notBefore.get(username.toString());
+        if (revokedAt == null) return false;
+        // iat has second resolution, a token from the same second as the revocation is rejected too
+        Object issuedAt = claims.get(JwtUserAuthenticationConverter.ISSUED_AT);
+        return !(issuedAt instanceof Number) || ((Number) issuedAt).longValue() <= revokedAt / 1000;
+    }
+
+    private void denyToken(String jti, long expiresAt) {
+        if (expiresAt < System.currentTimeMillis()) return;
+        this.deniedTokens.merge(jti, expiresAt, Math::max);
+        this.write(TOKEN_PREFIX + jti, System.currentTimeMillis(), expiresAt);
+    }
+
+    private void write(String id, long revokedAt, long expiresAt) {
+        this.jdbcTemplate.update("REPLACE INTO " + TABLE + " (revoked_id, revoked_at, expires_at) VALUES (?, ?, ?)", id, revokedAt, expiresAt);
+    }
+
+    private long expiresAtOf(Map<String, Object> claims) {
+        Object exp = claims.get(AccessTokenConverter.EXP);
+        return exp instanceof Number ? ((Number) exp).longValue() * 1000 : System.currentTimeMillis() + this.maxValidityMs;
+    }
+
+    // the claims of refresh tokens are needed as well, JwtAccessTokenConverter only decodes for subclasses
+    private static final class ClaimsConverter extends JwtAccessTokenConverter {
+        @Override
+        public Map<String, Object> decode(String token) {
+            return super.decode(token);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.webservice.config.security.oauth;
+
+import com.example.webservice.commons.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * In memory TokenStore for many live tokens. State is split over lock striped shards, every map is sharded by its own
+ * key (token value, authentication key or client and user), an operation locks one shard at a time. Tokens of a client
+ * and user are indexed so lookups and revocation do not scan, newest last. Expiry is a timing wheel per shard advanced
+ * once per tick instead of a periodic scan of all tokens, expiring refresh tokens are dropped as well.
+ * Like InMemoryTokenStore, the maps are not updated atomically with each other.
+ */
+public class ShardedTokenStore implements TokenStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedTokenStore.class);
+
+    private final Shard[] shards;
+    private final AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+    private final ScheduledExecutorService expiryExecutor;
+
+    public ShardedTokenStore(int shardCount, long tickMs) {
+        // a power of two, the shard is picked with a mask
+        int count = Integer.highestOneBit(Math.max(shardCount, 1) - 1) << 1;
+        if (count <= 0) count = 1;
+        long now = System.currentTimeMillis();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) this.shards[i] = new Shard(tickMs, now);
+        this.expiryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "token-store-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expiryExecutor.scheduleWithFixedDelay(this::expire, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        this.expiryExecutor.shutdownNow();
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return this.readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        AccessEntry entry = this.shardOf(token).getAccess(token);
+        return entry == null ? null : entry.authentication;
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        String value = token.getValue();
+        this.removeAccessToken(value);
+        AccessEntry entry = new AccessEntry(token, authentication, this.authenticationKeyGenerator.extractKey(authentication),
+                authentication.isClientOnly() ? null : userKey(authentication.getOAuth2Request().getClientId(), authentication.getName()));
+        this.shardOf(value).putAccess(entry);
+        this.shardOf(entry.authenticationKey).putAuthenticationKey(entry.authenticationKey, value);
+        if (entry.userKey != null) this.shardOf(entry.userKey).addUserToken(entry.userKey, token);
+        if (token.getRefreshToken() != null) {
+            String refreshValue = token.getRefreshToken().getValue();
+            this.shardOf(refreshValue).putAccessForRefresh(refreshValue, value);
+        }
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        AccessEntry entry = this.shardOf(tokenValue).getAccess(tokenValue);
+        return entry == null ? null : entry.token;
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        this.removeAccessToken(token.getValue());
+    }
+
+    private void removeAccessToken(String tokenValue) {
+        AccessEntry entry = this.shardOf(tokenValue).removeAccess(tokenValue, null);
+        if (entry != null) this.unindex(entry);
+    }
+
+    private void unindex(AccessEntry entry) {
+        String value = entry.token.getValue();
+        this.shardOf(entry.authenticationKey).removeAuthenticationKey(entry.authenticationKey, value);
+        if (entry.userKey != null) this.shardOf(entry.userKey).removeUserToken(entry.userKey, value);
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        this.shardOf(refreshToken.getValue()).putRefresh(new RefreshEntry(refreshToken, authentication));
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        RefreshEntry entry = this.shardOf(tokenValue).getRefresh(tokenValue);
+        return entry == null ? null : entry.token;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        RefreshEntry entry = this.shardOf(token.getValue()).getRefresh(token.getValue());
+        return entry == null ? null : entry.authentication;
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        this.shardOf(token.getValue()).removeRefresh(token.getValue(), null);
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        String accessValue = this.shardOf(refreshToken.getValue()).removeAccessForRefresh(refreshToken.getValue());
+        if (accessValue != null) this.removeAccessToken(accessValue);
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        String key = this.authenticationKeyGenerator.extractKey(authentication);
+        String value = this.shardOf(key).getAuthenticationKey(key);
+        if (value == null) return null;
+        AccessEntry entry = this.shardOf(value).getAccess(value);
+        if (entry == null) return null;
+        // same as InMemoryTokenStore: keep the latest authentication, the details may have changed
+        if (!authentication.equals(entry.authentication)) this.storeAccessToken(entry.token, authentication);
+        return entry.token;
+    }
+
+    // a snapshot in the order the tokens were stored, the newest last
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        String key = userKey(clientId, userName);
+        return this.shardOf(key).getUserTokens(key);
+    }
+
+    // not indexed, it visits every shard, nothing on the request path uses it
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        List<OAuth2AccessToken> tokens = new ArrayList<>();
+        for (Shard shard : this.shards) shard.collectByClient(clientId, tokens);
+        return tokens;
+    }
+
+    public int getAccessTokenCount() {
+        int count = 0;
+        for (Shard shard : this.shards) count += shard.accessCount();
+        return count;
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        try {
+            for (Shard shard : this.shards) {
+                // removal touches other shards, it happens after this shard's lock is released
+                for (AccessEntry entry : shard.advance(now)) this.unindex(entry);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not expire tokens", e);
+        }
+    }
+
+    private Shard shardOf(String key) {
+        int h = key.hashCode();
+        return this.shards[(h ^ (h >>> 16)) & (this.shards.length - 1)];
+    }
+
+    private static String userKey(String clientId, String userName) {
+        return clientId + '\0' + userName;
+    }
+
+    private static long deadlineOf(Date expiration) {
+        return expiration == null ? Long.MAX_VALUE : expiration.getTime();
+    }
+
+    private static final class AccessEntry {
+        private final OAuth2AccessToken token;
+        private final OAuth2Authentication authentication;
+        private final String authenticationKey;
+        private final String userKey;
+
+        private AccessEntry(OAuth2AccessToken token, OAuth2Authentication authentication, String authenticationKey, String userKey) {
+            this.token = token;
+            this.authentication = authentication;
+            this.authenticationKey = authenticationKey;
+            this.userKey = userKey;
+        }
+
+        private long deadline() {
+            return deadlineOf(this.token.getExpiration());
+        }
+    }
+
+    private static final class RefreshEntry {
+        private final OAuth2RefreshToken token;
+        private final OAuth2Authentication authentication;
+
+        private RefreshEntry(OAuth2RefreshToken token, OAuth2Authentication authentication) {
+            this.token = token;
+            this.authentication = authentication;
+        }
+
+        private long deadline() {
+            return this.token instanceof ExpiringOAuth2RefreshToken
+                    ? deadlineOf(((ExpiringOAuth2RefreshToken) this.token).getExpiration()) : Long.MAX_VALUE;
+        }
+    }
+
+    private static final class Shard {
+        private final Map<String, AccessEntry> access = new HashMap<>();
+        private final Map<String, RefreshEntry> refresh = new HashMap<>();
+        private final Map<String, String> accessByRefresh = new HashMap<>();
+        private final Map<String, String> accessByAuthenticationKey = new HashMap<>();
+        private final Map<String, LinkedHashMap<String, OAuth2AccessToken>> accessByUser = new HashMap<>();
+        // holds AccessEntry and RefreshEntry, an entry that was replaced or removed is skipped when it comes up
+        private final TimingWheel<Object> wheel;
+
+        private Shard(long tickMs, long now) {
+            this.wheel = new TimingWheel<>(tickMs, now);
+        }
+
+        synchronized AccessEntry getAccess(String value) {
+            return this.access.get(value);
+        }
+
+        synchronized void putAccess(AccessEntry entry) {
+            this.access.put(entry.token.getValue(), entry);
+            if (entry.deadline() != Long.MAX_VALUE) this.wheel.schedule(entry, entry.deadline());
+        }
+
+        // removes the entry of value, only if it is `expected` when that is given
+        synchronized AccessEntry removeAccess(String value, AccessEntry expected) {
+            AccessEntry entry = this.access.get(value);
+            if (entry == null || (expected != null && entry != expected)) return null;
+            return this.access.remove(value);
+        }
+
+        synchronized RefreshEntry getRefresh(String value) {
+            return this.refresh.get(value);
+        }
+
+        synchronized void putRefresh(RefreshEntry entry) {
+            this.refresh.put(entry.token.getValue(), entry);
+            if (entry.deadline() != Long.MAX_VALUE) this.wheel.schedule(entry, entry.deadline());
+        }
+
+        synchronized RefreshEntry removeRefresh(String value, RefreshEntry expected) {
+            RefreshEntry entry = this.refresh.get(value);
+            if (entry == null || (expected != null && entry != expected)) return null;
+            this.accessByRefresh.remove(value);
+            return this.refresh.remove(value);
+        }
+
+        synchronized void putAccessForRefresh(String refreshValue, String accessValue) {
+            this.accessByRefresh.put(refreshValue, accessValue);
+        }
+
+        synchronized String removeAccessForRefresh(String refreshValue) {
+            return this.accessByRefresh.remove(refreshValue);
+        }
+
+        synchronized String getAuthenticationKey(String key) {
+            return this.accessByAuthenticationKey.get(key);
+        }
+
+        synchronized void putAuthenticationKey(String key, String value) {
+            this.accessByAuthenticationKey.put(key, value);
+        }
+
+        synchronized void removeAuthenticationKey(String key, String value) {
+            this.accessByAuthenticationKey.remove(key, value);
+        }
+
+        synchronized void addUserToken(String userKey, OAuth2AccessToken token) {
+            this.accessByUser.computeIfAbsent(userKey, k -> new LinkedHashMap<>()).put(token.getValue(), token);
+        }
+
+        synchronized void removeUserToken(String userKey, String value) {
+            LinkedHashMap<String, OAuth2AccessToken> tokens = this.accessByUser.get(userKey);
+            if (tokens == null) return;
+            tokens.remove(value);
+            if (tokens.isEmpty()) this.accessByUser.remove(userKey);
+        }
+
+        synchronized List<OAuth2AccessToken> getUserTokens(String userKey) {
+            LinkedHashMap<String, OAuth2AccessToken> tokens = this.accessByUser.get(userKey);
+            return tokens == null ? new ArrayList<>() : new ArrayList<>(tokens.values());
+        }
+
+        synchronized void collectByClient(String clientId, List<OAuth2AccessToken> tokens) {
+            for (AccessEntry entry : this.access.values())
+                if (clientId.equals(entry.authentication.getOAuth2Request().getClientId())) tokens.add(entry.token);
+        }
+
+        synchronized int accessCount() {
+            return this.access.size();
+        }
+
+        // removes what is due from this shard and returns the access tokens, their indexes in other shards are left to the caller
+        synchronized List<AccessEntry> advance(long now) {
+            List<AccessEntry> expired = new ArrayList<>();
+            this.wheel.advance(now, item -> {
+                if (item instanceof AccessEntry) {
+                    AccessEntry entry = (AccessEntry) item;
+                    if (this.access.get(entry.token.getValue()) != entry) return;
+                    if (entry.deadline() > now) this.wheel.schedule(entry, entry.deadline());
+                    else expired.add(this.access.remove(entry.token.getValue()));
+                } else {
+                    RefreshEntry entry = (RefreshEntry) item;
+                    if (this.refresh.get(entry.token.getValue()) != entry) return;
+                    if (entry.deadline() > now) this.wheel.schedule(entry, entry.deadline());
+                    else this.removeRefresh(entry.token.getValue(), entry);
+                }
+            });
+            return expired;
+        }
+    }
+}
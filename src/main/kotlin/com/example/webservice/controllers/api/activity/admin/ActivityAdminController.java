@@ -0,0 +1,102 @@
+package com.example.webservice.controllers.api.activity.admin;
+
+import com.example.webservice.commons.PageAttr;
+import com.example.webservice.entities.User;
+import com.example.webservice.entities.pojo.CursorPage;
+import com.example.webservice.exceptions.invalid.InvalidException;
+import com.example.webservice.exceptions.notfound.UserNotFoundException;
+import com.example.webservice.services.ActivityRollupService;
+import com.example.webservice.services.ActivityService;
+import com.example.webservice.services.UserService;
+import com.example.webservice.services.VisitorCounterService;
+import com.example.webservice.services.impl.ActivityPartitionService;
+import com.example.webservice.services.impl.PresenceTracker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/api/v1/admin/activities")
+public class ActivityAdminController {
+
+    private final VisitorCounterService visitorCounterService;
+    private final ActivityRollupService activityRollupService;
+    private final PresenceTracker presenceTracker;
+    private final ActivityService activityService;
+    private final UserService userService;
+    private final ActivityPartitionService activityPartitionService;
+
+    @Autowired
+    public ActivityAdminController(VisitorCounterService visitorCounterService, ActivityRollupService activityRollupService, PresenceTracker presenceTracker, ActivityService activityService, UserService userService, ActivityPartitionService activityPartitionService) {
+        this.visitorCounterService = visitorCounterService;
+        this.activityRollupService = activityRollupService;
+        this.presenceTracker = presenceTracker;
+        this.activityService = activityService;
+        this.userService = userService;
+        this.activityPartitionService = activityPartitionService;
+    }
+
+    // rewrites the whole table, run it once in a quiet period
+    @PostMapping("/partitions/migrate")
+    private ResponseEntity migratePartitions() {
+        if (!this.activityPartitionService.migrate())
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Already partitioned!");
+        return ResponseEntity.ok("Partitioned!");
+    }
+
+    @GetMapping("/visitors")
+    private ResponseEntity getTotalVisitors() {
+        return ResponseEntity.ok(this.visitorCounterService.getTotal());
+    }
+
+    @GetMapping("/online")
+    private ResponseEntity countOnline(@RequestParam(value = "minutes", defaultValue = "5") Integer minutes) {
+        return ResponseEntity.ok(this.presenceTracker.countOnline(minutes));
+    }
+
+    @GetMapping("/recent")
+    private ResponseEntity findRecent(@RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+        return ResponseEntity.ok(this.presenceTracker.findRecent(limit));
+    }
+
+    @GetMapping("/users/{id}")
+    private ResponseEntity findByUser(@PathVariable("id") Long id,
+                                      @RequestParam(value = "after", defaultValue = "") String after,
+                                      @RequestParam(value = "size", defaultValue = "10") Integer size) throws UserNotFoundException, InvalidException {
+        User user = this.userService.findOne(id);
+        if (user == null) throw new UserNotFoundException("Could not find user with id " + id);
+        return ResponseEntity.ok(CursorPage.of(this.activityService.findByUser(user, PageAttr.decodeCursor(after), size)));
+    }
+
+    @GetMapping("/users/{id}/lastSeen")
+    private ResponseEntity getLastSeen(@PathVariable("id") Long id) {
+        return ResponseEntity.ok(this.presenceTracker.getLastSeen(id));
+    }
+
+    // defaults to the last 30 days
+    @GetMapping("/stats")
+    private ResponseEntity getStats(@RequestParam(value = "fromDate", required = false) Date fromDate,
+                                    @RequestParam(value = "toDate", required = false) Date toDate) {
+        if (toDate == null) toDate = new Date();
+        if (fromDate == null) fromDate = new Date(toDate.getTime() - TimeUnit.DAYS.toMillis(30));
+        return ResponseEntity.ok(this.activityRollupService.getAdminStats(fromDate, toDate));
+    }
+
+    @GetMapping("/stats/urls")
+    private ResponseEntity getTopUrls(@RequestParam(value = "fromDate", required = false) Date fromDate,
+                                      @RequestParam(value = "toDate", required = false) Date toDate,
+                                      @RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+        if (toDate == null) toDate = new Date();
+        if (fromDate == null) fromDate = new Date(toDate.getTime() - TimeUnit.DAYS.toMillis(30));
+        return ResponseEntity.ok(this.activityRollupService.getTopUrls(fromDate, toDate, limit));
+    }
+}
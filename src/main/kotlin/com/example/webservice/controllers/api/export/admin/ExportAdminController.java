@@ -0,0 +1,77 @@
+package com.example.webservice.controllers.api.export.admin;
+
+import com.example.webservice.exceptions.invalid.InvalidException;
+import com.example.webservice.interceptors.AsyncTimeoutInterceptor;
+import com.example.webservice.services.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Date;
+
+@RestController
+@RequestMapping("/api/v1/admin/export")
+public class ExportAdminController {
+
+    private final ExportService exportService;
+    @Value("${export.timeoutMs}")
+    private long timeoutMs;
+
+    @Autowired
+    public ExportAdminController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @GetMapping("/activities")
+    private ResponseEntity<StreamingResponseBody> exportActivities(@RequestParam(value = "fromDate", required = false) Date fromDate,
+                                                                   @RequestParam(value = "toDate", required = false) Date toDate,
+                                                                   @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                                                                   HttpServletRequest request) throws InvalidException {
+        ExportService.Format exportFormat = this.parseFormat(format);
+        return this.stream(request, "activities", exportFormat, out -> this.exportService.exportActivities(fromDate, toDate, exportFormat, out));
+    }
+
+    @GetMapping("/users")
+    private ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(value = "fromDate", required = false) Date fromDate,
+                                                              @RequestParam(value = "toDate", required = false) Date toDate,
+                                                              @RequestParam(value = "role", required = false) String role,
+                                                              @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                                                              HttpServletRequest request) throws InvalidException {
+        ExportService.Format exportFormat = this.parseFormat(format);
+        return this.stream(request, "users", exportFormat, out -> this.exportService.exportUsers(fromDate, toDate, role, exportFormat, out));
+    }
+
+    @GetMapping("/profiles")
+    private ResponseEntity<StreamingResponseBody> exportProfiles(@RequestParam(value = "fromDate", required = false) Date fromDate,
+                                                                 @RequestParam(value = "toDate", required = false) Date toDate,
+                                                                 @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                                                                 HttpServletRequest request) throws InvalidException {
+        ExportService.Format exportFormat = this.parseFormat(format);
+        return this.stream(request, "profiles", exportFormat, out -> this.exportService.exportProfiles(fromDate, toDate, exportFormat, out));
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(HttpServletRequest request, String name, ExportService.Format format, StreamingResponseBody body) {
+        // exports run for as long as they take, other async requests keep the default timeout
+        AsyncTimeoutInterceptor.setTimeout(request, this.timeoutMs);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "." + format.getExtension() + "\"")
+                .body(body);
+    }
+
+    private ExportService.Format parseFormat(String format) throws InvalidException {
+        try {
+            return ExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidException("Format must be ndjson or csv!");
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.webservice.controllers.api.promo.admin;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.example.webservice.commons.PageAttr;
 import com.example.webservice.entities.Promo;
+import com.example.webservice.entities.pojo.CursorPage;
 import com.example.webservice.exceptions.forbidden.ForbiddenException;
 import com.example.webservice.exceptions.invalid.ImageInvalidException;
 import com.example.webservice.exceptions.invalid.InvalidException;
@@ -30,7 +32,10 @@ public class PromoAdminController {
     }
 
     @GetMapping("")
-    private ResponseEntity getAllPromotions(@RequestParam(value = "page", defaultValue = "0") Integer page) {
+    private ResponseEntity getAllPromotions(@RequestParam(value = "page", defaultValue = "0") Integer page,
+                                            @RequestParam(value = "after", required = false) String after) throws InvalidException {
+        if (after != null)
+            return ResponseEntity.ok(CursorPage.of(this.promoService.findAllAfter(PageAttr.decodeCursor(after))));
         return ResponseEntity.ok(this.promoService.findAll(page));
     }
 
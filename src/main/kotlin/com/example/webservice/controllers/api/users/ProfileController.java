@@ -1,10 +1,14 @@
 package com.example.webservice.controllers.api.users;
 
+import com.example.webservice.commons.PageAttr;
 import com.example.webservice.commons.utils.ImageValidator;
 import com.example.webservice.entities.Profile;
+import com.example.webservice.entities.pojo.CursorPage;
+import com.example.webservice.entities.pojo.ProfileSlice;
 import com.example.webservice.exceptions.exists.UserAlreadyExistsException;
 import com.example.webservice.exceptions.forbidden.ForbiddenException;
 import com.example.webservice.exceptions.invalid.ImageInvalidException;
+import com.example.webservice.exceptions.invalid.InvalidException;
 import com.example.webservice.exceptions.invalid.UserInvalidException;
 import com.example.webservice.exceptions.notfound.NotFoundException;
 import com.example.webservice.exceptions.notfound.ProfileNotFoundException;
@@ -33,8 +37,11 @@ public class ProfileController {
     }
 
     @GetMapping("")
-    private ResponseEntity getAllProfile(@RequestParam(value = "page", defaultValue = "0") Integer page) {
-        Page profilePage = this.profileService.getAllProfilePaginated(page);
+    private ResponseEntity getAllProfile(@RequestParam(value = "page", defaultValue = "0") Integer page,
+                                         @RequestParam(value = "after", required = false) String after) throws InvalidException {
+        if (after != null)
+            return ResponseEntity.ok(CursorPage.of(this.profileService.getAllProfileAfter(PageAttr.decodeCursor(after)), ProfileSlice::getId));
+        Page<ProfileSlice> profilePage = this.profileService.getAllProfilePaginated(page);
         return ResponseEntity.ok(profilePage);
     }
 
@@ -1,7 +1,10 @@
 package com.example.webservice.controllers.api.users;
 
+import com.example.webservice.commons.PageAttr;
 import com.example.webservice.config.security.TokenService;
 import com.example.webservice.entities.User;
+import com.example.webservice.entities.pojo.CursorPage;
+import com.example.webservice.entities.pojo.UserSlice;
 import com.example.webservice.exceptions.exists.UserAlreadyExistsException;
 import com.example.webservice.exceptions.forbidden.ForbiddenException;
 import com.example.webservice.exceptions.invalid.InvalidException;
@@ -28,8 +31,16 @@ public class UserController {
 
     @GetMapping("")
     public ResponseEntity all(@RequestParam(value = "page", defaultValue = "0") Integer page,
-                              @RequestParam(value = "role", required = false) String role) {
-        Page<User> userPage;
+                              @RequestParam(value = "after", required = false) String after,
+                              @RequestParam(value = "role", required = false) String role) throws InvalidException {
+        // keyset pagination when a cursor is given, `after=` starts from the newest user
+        if (after != null) {
+            Long afterId = PageAttr.decodeCursor(after);
+            return ResponseEntity.ok(CursorPage.of(role == null
+                    ? this.userService.findAllAfter(afterId)
+                    : this.userService.findByRoleAfter(role, afterId), UserSlice::getUserId));
+        }
+        Page<UserSlice> userPage;
         if (role == null)
             userPage = this.userService.findAll(page);
         else
@@ -49,22 +60,30 @@ public class UserController {
     private ResponseEntity searchUser(@RequestParam("q") String query,
                                       @RequestParam(value = "page", defaultValue = "0") Integer page,
                                       @RequestParam(value = "size", defaultValue = "10") Integer size) throws ForbiddenException, UserNotFoundException {
-        Page<User> userPage = this.userService.searchUser(query, page, size);
+        Page<UserSlice> userPage = this.userService.searchUser(query, page, size);
         return ResponseEntity.ok(userPage);
     }
 
 
+    // autocomplete for admin user pickers, served from memory
+    @GetMapping("/suggest")
+    private ResponseEntity suggest(@RequestParam("prefix") String prefix,
+                                   @RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+        return ResponseEntity.ok(this.userService.suggest(prefix, limit));
+    }
+
     @GetMapping("/byRole")
     public ResponseEntity byRole(@RequestParam(value = "role") String role,
                                  @RequestParam(value = "page", defaultValue = "0") Integer page) {
-        return ResponseEntity.ok(this.userService.findByRole(role));
+        return ResponseEntity.ok(this.userService.findByRole(role, page));
     }
 
 
     @PostMapping("/{id}/access/toggle")
     public ResponseEntity disableUser(@PathVariable("id") Long id,
                                       @RequestParam("enabled") boolean enabled) throws UserNotFoundException, UserAlreadyExistsException, NullPasswordException, UserInvalidException {
-        User user = this.userService.findOne(id);
+        User user = this.userService.findOneForUpdate(id);
+        if (user == null) throw new UserNotFoundException("Could not find user with id " + id);
         user.setEnabled(enabled);
         user = this.userService.save(user);
         this.tokenService.revokeAuthentication(user);
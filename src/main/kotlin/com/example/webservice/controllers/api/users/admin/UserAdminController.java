@@ -0,0 +1,95 @@
+package com.example.webservice.controllers.api.users.admin;
+
+import com.example.webservice.entities.pojo.BulkUserUpdate;
+import com.example.webservice.entities.pojo.UserSlice;
+import com.example.webservice.exceptions.invalid.InvalidException;
+import com.example.webservice.services.ExportService;
+import com.example.webservice.services.UserImportService;
+import com.example.webservice.services.UserService;
+import com.example.webservice.services.impl.PasswordHashingService;
+import com.example.webservice.services.impl.UserCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/admin/users")
+public class UserAdminController {
+
+    private final UserCache userCache;
+    private final PasswordHashingService passwordHashingService;
+    private final UserImportService userImportService;
+    private final UserService userService;
+
+    @Autowired
+    public UserAdminController(UserCache userCache, PasswordHashingService passwordHashingService, UserImportService userImportService, UserService userService) {
+        this.userCache = userCache;
+        this.passwordHashingService = passwordHashingService;
+        this.userImportService = userImportService;
+        this.userService = userService;
+    }
+
+    // replaces the roles of every listed user, like PUT /api/v1/users/{id}/changeRole
+    @PutMapping("/roles")
+    private ResponseEntity setRoles(@RequestBody BulkUserUpdate update) throws InvalidException {
+        List<UserSlice> users = this.userService.setRoles(update.getUserIds(), update.getRoles());
+        return ResponseEntity.ok(this.result(users));
+    }
+
+    // enables or disables every listed user, like POST /api/v1/users/{id}/access/toggle
+    @PutMapping("/access")
+    private ResponseEntity setAccess(@RequestBody BulkUserUpdate update) throws InvalidException {
+        if (update.getEnabled() == null) throw new InvalidException("Enabled can not be empty!");
+        List<UserSlice> users = this.userService.setEnabled(update.getUserIds(), update.getEnabled());
+        return ResponseEntity.ok(this.result(users));
+    }
+
+    // the service revokes the tokens of the changed users once the change is committed
+    private Map<String, Object> result(List<UserSlice> users) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("updated", users.size());
+        return result;
+    }
+
+    // the request body is the file itself, read as it arrives
+    @PostMapping("/import")
+    private ResponseEntity importUsers(@RequestParam(value = "format", defaultValue = "ndjson") String format,
+                                      HttpServletRequest request) throws InvalidException, IOException {
+        ExportService.Format importFormat;
+        try {
+            importFormat = ExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidException("Format must be ndjson or csv!");
+        }
+        return ResponseEntity.ok(this.userImportService.importUsers(request.getInputStream(), importFormat));
+    }
+
+    @GetMapping("/cache")
+    private ResponseEntity getCacheStats() {
+        return ResponseEntity.ok(this.userCache.getStats());
+    }
+
+    @DeleteMapping("/cache")
+    private ResponseEntity clearCache() {
+        this.userCache.invalidateAll();
+        return ResponseEntity.ok().build();
+    }
+
+    @GetMapping("/passwordHashing")
+    private ResponseEntity getPasswordHashingStats() {
+        return ResponseEntity.ok(this.passwordHashingService.getStats());
+    }
+}
@@ -3,21 +3,36 @@ package com.example.webservice.entities;
 import com.example.webservice.entities.base.BaseEntity;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 
-import javax.persistence.Entity;
-import javax.persistence.OneToOne;
-import javax.persistence.Table;
+import javax.persistence.*;
 
+// activity_logs is range partitioned by ActivityPartitionService, mysql allows no foreign keys on partitioned tables
 @Entity
-@Table(name = "activity_logs")
+@Table(name = "activity_logs", indexes = {
+        @Index(columnList = "user_id,created")
+})
+@AssociationOverrides({
+        @AssociationOverride(name = "createdBy",
+                joinColumns = @JoinColumn(name = "created_by_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))),
+        @AssociationOverride(name = "updatedBy",
+                joinColumns = @JoinColumn(name = "updated_by_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT)))
+})
 public class Activity extends BaseEntity {
     private String userAgent;
     private String ip;
     private String expires;
-    @OneToOne
+    @ManyToOne
+    @JoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     @JsonBackReference
     private User user;
     private String requestMethod;
     private String url;
+    private String platform;
+    private String os;
+    private String appVersion;
+    private boolean bot;
+    // number of requests this record stands for when its route is sampled
+    @Column(nullable = false, columnDefinition = "INT NOT NULL DEFAULT 1")
+    private int weight = 1;
 
     private Long totalVisitors;
 
@@ -69,6 +84,46 @@ public class Activity extends BaseEntity {
         this.requestMethod = requestMethod;
     }
 
+    public String getPlatform() {
+        return platform;
+    }
+
+    public void setPlatform(String platform) {
+        this.platform = platform;
+    }
+
+    public String getOs() {
+        return os;
+    }
+
+    public void setOs(String os) {
+        this.os = os;
+    }
+
+    public String getAppVersion() {
+        return appVersion;
+    }
+
+    public void setAppVersion(String appVersion) {
+        this.appVersion = appVersion;
+    }
+
+    public boolean isBot() {
+        return bot;
+    }
+
+    public void setBot(boolean bot) {
+        this.bot = bot;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
     public Long getTotalVisitors() {
         return totalVisitors == null ? 0 : totalVisitors;
     }
@@ -0,0 +1,101 @@
+package com.example.webservice.entities;
+
+import javax.persistence.*;
+import java.util.Date;
+
+// Pre-aggregated activity counters, written by ActivityRollupServiceImpl with plain jdbc upserts
+@Entity
+@Table(name = "activity_rollups", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"granularity", "bucket", "metric", "dimension"})
+})
+public class ActivityRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(length = 8, nullable = false)
+    private String granularity;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date bucket;
+    @Column(length = 32, nullable = false)
+    private String metric;
+    @Column(length = 191, nullable = false)
+    private String dimension;
+    private long total;
+
+    public enum Granularity {
+        HOUR("hour"),
+        DAY("day");
+
+        String value;
+
+        Granularity(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    public enum Metric {
+        HITS("hits"),
+        UNIQUE_USERS("unique_users"),
+        NEW_USERS("new_users"),
+        URL_HITS("url_hits");
+
+        String value;
+
+        Metric(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(String granularity) {
+        this.granularity = granularity;
+    }
+
+    public Date getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(Date bucket) {
+        this.bucket = bucket;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public void setMetric(String metric) {
+        this.metric = metric;
+    }
+
+    public String getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(String dimension) {
+        this.dimension = dimension;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+}
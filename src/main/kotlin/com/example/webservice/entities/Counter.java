@@ -0,0 +1,39 @@
+package com.example.webservice.entities;
+
+import com.example.webservice.entities.base.BaseEntity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "counters")
+public class Counter extends BaseEntity {
+    @Column(unique = true, nullable = false)
+    private String name;
+    private long total;
+
+    public Counter() {
+    }
+
+    public Counter(String name, long total) {
+        this.name = name;
+        this.total = total;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+}
@@ -2,9 +2,12 @@ package com.example.webservice.entities;
 
 import com.example.webservice.entities.base.BaseEntity;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import javax.persistence.Entity;
 import javax.persistence.Table;
+import java.util.*;
 
 @Entity
 @Table(name = "roles")
@@ -21,6 +24,7 @@ public class Role extends BaseEntity {
     }
 
 
+    // the ordinal is the bit in User.roleMask, append new roles at the end and never reorder
     public enum ERole {
         ROLE_ADMIN("Admin"),
         ROLE_DRIVER("Driver"),
@@ -37,6 +41,62 @@ public class Role extends BaseEntity {
         }
     }
 
+    // authority lists are immutable and shared by every user with the same roles
+    private static final List<List<GrantedAuthority>> AUTHORITIES;
+
+    static {
+        List<List<GrantedAuthority>> authorities = new ArrayList<>();
+        for (int mask = 0; mask < 1 << ERole.values().length; mask++) {
+            List<GrantedAuthority> list = new ArrayList<>();
+            for (ERole eRole : ERole.values())
+                if ((mask & maskOf(eRole)) != 0) list.add(new SimpleGrantedAuthority(eRole.toString()));
+            authorities.add(Collections.unmodifiableList(list));
+        }
+        AUTHORITIES = Collections.unmodifiableList(authorities);
+    }
+
+    public static int maskOf(ERole eRole) {
+        return 1 << eRole.ordinal();
+    }
+
+    public static int maskOf(Collection<Role> roles) {
+        int mask = 0;
+        if (roles == null) return mask;
+        for (Role role : roles) {
+            ERole eRole = role == null ? null : findERole(role.getRole());
+            if (eRole != null) mask |= maskOf(eRole);
+        }
+        return mask;
+    }
+
+    // every mask that has the role's bit set, a role filter is an IN list on the indexed mask column
+    public static List<Integer> masksWith(ERole eRole) {
+        List<Integer> masks = new ArrayList<>();
+        for (int mask = 0; mask < 1 << ERole.values().length; mask++)
+            if ((mask & maskOf(eRole)) != 0) masks.add(mask);
+        return masks;
+    }
+
+    public static List<GrantedAuthority> authoritiesOf(int mask) {
+        return AUTHORITIES.get(mask & ((1 << ERole.values().length) - 1));
+    }
+
+    // unlike getERole, unknown roles are null
+    public static ERole findERole(String role) {
+        if (role == null) return null;
+        role = role.trim();
+        for (ERole eRole : ERole.values())
+            if (eRole.toString().equals(role)) return eRole;
+        return null;
+    }
+
+    public static ERole findERoleByName(String roleName) {
+        if (roleName == null) return null;
+        for (ERole eRole : ERole.values())
+            if (eRole.getValue().equalsIgnoreCase(roleName.trim())) return eRole;
+        return null;
+    }
+
     public static ERole getERole(String role) {
         for (ERole eRole : ERole.values()) {
             if (eRole.toString().equals(role))
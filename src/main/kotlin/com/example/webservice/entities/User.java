@@ -1,11 +1,11 @@
 package com.example.webservice.entities;
 
+import com.example.webservice.commons.utils.PhoneUtil;
 import com.example.webservice.entities.base.BaseEntity;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import javax.persistence.*;
@@ -16,11 +16,16 @@ import javax.validation.constraints.Size;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @Entity
 @Table(name = "m_users", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"username", "email"})
+}, indexes = {
+        @Index(columnList = "phoneNormalized"),
+        @Index(columnList = "name"),
+        @Index(columnList = "roleMask")
 })
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class User extends BaseEntity implements UserDetails, Serializable {
@@ -47,6 +52,11 @@ public class User extends BaseEntity implements UserDetails, Serializable {
     @JsonProperty("phone")
     private String phoneNumber;
 
+    // lookups go through this column, see PhoneUtil.normalize
+    @Column(length = 32)
+    @JsonIgnore
+    private String phoneNormalized;
+
     @NotEmpty
     @NotNull
     @Size(min = 6, max = 100, message = "Password must be between 6 to 100 characters!")
@@ -57,6 +67,10 @@ public class User extends BaseEntity implements UserDetails, Serializable {
     @ManyToMany(fetch = FetchType.EAGER)
     @JsonProperty(access = JsonProperty.Access.READ_ONLY)
     private List<Role> roles;
+    // bit Role.maskOf(eRole) per role, kept in step with roles for authority checks and indexed role filters
+    @Column(nullable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    @JsonIgnore
+    private int roleMask;
     @JsonProperty(access = JsonProperty.Access.READ_ONLY)
     private boolean enabled = true;
     @JsonProperty(access = JsonProperty.Access.READ_ONLY)
@@ -65,12 +79,25 @@ public class User extends BaseEntity implements UserDetails, Serializable {
     private boolean accountNonLocked = true;
     @JsonProperty(access = JsonProperty.Access.READ_ONLY)
     private boolean credentialsNonExpired = true;
+    // written only by PresenceTracker checkpoints
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(insertable = false, updatable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Date lastSeen;
 
     @PrePersist
     private void onPrePersist() {
 //        if (roles == null || roles.isEmpty())
 //            grantRole(new Role(Role.ERole.ROLE_USER));
         if (this.username == null) this.setUsername(this.getPhoneNumber());
+        this.phoneNormalized = PhoneUtil.normalize(this.phoneNumber);
+        this.roleMask = Role.maskOf(this.roles);
+    }
+
+    @PreUpdate
+    private void onPreUpdate() {
+        this.phoneNormalized = PhoneUtil.normalize(this.phoneNumber);
+        this.roleMask = Role.maskOf(this.roles);
     }
 
 
@@ -78,46 +105,55 @@ public class User extends BaseEntity implements UserDetails, Serializable {
         if (this.roles == null)
             this.roles = new ArrayList<>();
         // check if user already has that role
-        if (!hasRole(role.getRole()) && !role.isAdmin())
+        if (!hasRole(role.getRole()) && !role.isAdmin()) {
             this.roles.add(role);
+            this.roleMask = Role.maskOf(this.roles);
+        }
     }
 
     public void changeRole(Role role) {
         if (role == null || role.getRole().equals(Role.ERole.ROLE_ADMIN.toString())) return;
         this.roles = new ArrayList<>();
         this.roles.add(role);
+        this.roleMask = Role.maskOf(this.roles);
     }
 
     public boolean hasRole(String role) {
-        return this.roles != null && this.roles.stream()
-                .filter(r -> r.getRole().trim().equals(role.trim()))
-                .count() > 0;
+        Role.ERole eRole = Role.findERole(role);
+        return eRole != null && this.hasRole(eRole);
+    }
+
+    public boolean hasRole(Role.ERole eRole) {
+        return (this.getRoleMask() & Role.maskOf(eRole)) != 0;
     }
 
     @JsonIgnore
     public boolean isOnlyUser() {
-        return this.roles.size() == 1 && hasRole(Role.ERole.ROLE_USER.toString());
+        return this.getRoleMask() == Role.maskOf(Role.ERole.ROLE_USER);
     }
 
     @JsonIgnore
     public boolean isDriver() {
-        return this.hasRole(Role.ERole.ROLE_DRIVER.toString());
+        return this.hasRole(Role.ERole.ROLE_DRIVER);
     }
 
     @JsonIgnore
     public boolean isAdmin() {
-        return this.hasRole(Role.ERole.ROLE_ADMIN.toString());
+        return this.hasRole(Role.ERole.ROLE_ADMIN);
     }
 
     @Override
     @JsonIgnore
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        List<GrantedAuthority> authorityList = new ArrayList<>();
-        for (Role role : this.roles) {
-            GrantedAuthority authority = new SimpleGrantedAuthority(role.getRole());
-            authorityList.add(authority);
-        }
-        return authorityList;
+        return Role.authoritiesOf(this.getRoleMask());
+    }
+
+    // rows written before the mask existed are 0 until backfilled, derive it from the roles then
+    @JsonIgnore
+    public int getRoleMask() {
+        if (this.roleMask == 0 && this.roles != null && !this.roles.isEmpty())
+            this.roleMask = Role.maskOf(this.roles);
+        return this.roleMask;
     }
 
     @Override
@@ -178,6 +214,12 @@ public class User extends BaseEntity implements UserDetails, Serializable {
 
     public void setRoles(List<Role> roles) {
         this.roles = roles;
+        this.roleMask = Role.maskOf(roles);
+    }
+
+    // for principals rebuilt from signed token claims, which carry authorities and no roles
+    public void setRoleMask(int roleMask) {
+        this.roleMask = roleMask;
     }
 
     public void setEnabled(boolean enabled) {
@@ -206,6 +248,12 @@ public class User extends BaseEntity implements UserDetails, Serializable {
 
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
+        this.phoneNormalized = PhoneUtil.normalize(phoneNumber);
+    }
+
+    @JsonIgnore
+    public String getPhoneNormalized() {
+        return phoneNormalized;
     }
 
 
@@ -216,4 +264,8 @@ public class User extends BaseEntity implements UserDetails, Serializable {
     public void setUserType(String userType) {
         this.userType = userType;
     }
+
+    public Date getLastSeen() {
+        return lastSeen;
+    }
 }
\ No newline at end of file
@@ -20,17 +20,20 @@ public abstract class BaseEntity {
     @Temporal(value = TemporalType.TIMESTAMP)
     private Date lastUpdated;
 
-    @OneToOne
+    // lazy so that loading any entity does not also load two users and their roles, nothing reads them on list paths
+    @ManyToOne(fetch = FetchType.LAZY)
     private User createdBy;
-    
-    @OneToOne
+
+    @ManyToOne(fetch = FetchType.LAZY)
     private User updatedBy;
 
     @PrePersist
     private void onBasePersist() {
-        this.created = new Date();
+        // keep the original time for records that are persisted later than they were created
+        if (this.created == null) this.created = new Date();
         this.lastUpdated = new Date();
-        this.createdBy = getCurrentUser();
+        // records written off the request thread have no security context, their creator is set when they are built
+        if (this.createdBy == null) this.createdBy = getCurrentUser();
     }
 
     @PreUpdate
@@ -72,6 +75,11 @@ public abstract class BaseEntity {
         return createdBy;
     }
 
+    @JsonIgnore
+    public void setCreatedBy(User createdBy) {
+        this.createdBy = createdBy;
+    }
+
     @JsonIgnore
     public User getUpdatedBy() {
         return updatedBy;
@@ -5,6 +5,8 @@ import java.util.Map;
 
 public class AdminStats {
     private Map<Date, Long> noOfUsers;
+    private Map<Date, Long> noOfActiveUsers;
+    private Map<Date, Long> noOfDailyHits;
     private Map<Date, Integer> noOfRequests;
     private Map<Date, Integer> noOfConfirmedRequests;
     private Map<Date, Integer> noOfBuildings;
@@ -22,6 +24,22 @@ public class AdminStats {
         this.noOfUsers = noOfUsers;
     }
 
+    public Map<Date, Long> getNoOfActiveUsers() {
+        return noOfActiveUsers;
+    }
+
+    public void setNoOfActiveUsers(Map<Date, Long> noOfActiveUsers) {
+        this.noOfActiveUsers = noOfActiveUsers;
+    }
+
+    public Map<Date, Long> getNoOfDailyHits() {
+        return noOfDailyHits;
+    }
+
+    public void setNoOfDailyHits(Map<Date, Long> noOfDailyHits) {
+        this.noOfDailyHits = noOfDailyHits;
+    }
+
     public Map<Date, Integer> getNoOfRequests() {
         return noOfRequests;
     }
@@ -0,0 +1,33 @@
+package com.example.webservice.entities.pojo;
+
+import java.util.List;
+
+public class BulkUserUpdate {
+    private List<Long> userIds;
+    private List<String> roles;
+    private Boolean enabled;
+
+    public List<Long> getUserIds() {
+        return userIds;
+    }
+
+    public void setUserIds(List<Long> userIds) {
+        this.userIds = userIds;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public void setRoles(List<String> roles) {
+        this.roles = roles;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.webservice.entities.pojo;
+
+import com.example.webservice.commons.PageAttr;
+import com.example.webservice.entities.base.BaseEntity;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.function.Function;
+
+// A slice of a keyset paginated list, pass `next` back as `after` to get the following one.
+public class CursorPage<T> {
+    private final List<T> content;
+    private final String next;
+
+    private CursorPage(List<T> content, String next) {
+        this.content = content;
+        this.next = next;
+    }
+
+    public static <T extends BaseEntity> CursorPage<T> of(Slice<T> slice) {
+        return of(slice, BaseEntity::getId);
+    }
+
+    // for projections, idOf gives the id the slice is ordered by
+    public static <T> CursorPage<T> of(Slice<T> slice, Function<T, Long> idOf) {
+        List<T> content = slice.getContent();
+        String next = slice.hasNext() && !content.isEmpty() ? PageAttr.encodeCursor(idOf.apply(content.get(content.size() - 1))) : null;
+        return new CursorPage<>(content, next);
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
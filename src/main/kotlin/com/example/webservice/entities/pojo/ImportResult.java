@@ -0,0 +1,64 @@
+package com.example.webservice.entities.pojo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImportResult {
+    private int total;
+    private int imported;
+    private int failed;
+    private List<RowError> errors = new ArrayList<>();
+
+    public void addError(RowError error, int maxReported) {
+        this.failed++;
+        if (this.errors.size() < maxReported) this.errors.add(error);
+    }
+
+    public void incrementTotal() {
+        this.total++;
+    }
+
+    public void addImported(int count) {
+        this.imported += count;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public static class RowError {
+        private long line;
+        private String key;
+        private String message;
+
+        public RowError(long line, String key, String message) {
+            this.line = line;
+            this.key = key;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
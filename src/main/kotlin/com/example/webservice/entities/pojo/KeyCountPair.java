@@ -0,0 +1,27 @@
+package com.example.webservice.entities.pojo;
+
+public class KeyCountPair {
+    private String key;
+    private long count;
+
+    public KeyCountPair(String key, long count) {
+        this.key = key;
+        this.count = count;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
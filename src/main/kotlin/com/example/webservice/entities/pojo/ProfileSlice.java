@@ -0,0 +1,110 @@
+package com.example.webservice.entities.pojo;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Date;
+
+// Read model of a profile for lists, filled by constructor expressions in ProfileRepository. The owner is
+// serialized as a nested user object with its id and username.
+public class ProfileSlice {
+    private Long id;
+    private Date created;
+    private Date lastUpdated;
+    private String name;
+    private Date birthDate;
+    private String gender;
+    private String age;
+    private String profilePicturePath;
+    private String photoIdentityPath;
+    private Address address;
+    private Long userId;
+    private String username;
+
+    public ProfileSlice(Long id, Date created, Date lastUpdated, String name, Date birthDate, String gender, String age,
+                        String profilePicturePath, String photoIdentityPath, Address address, Long userId, String username) {
+        this.id = id;
+        this.created = created;
+        this.lastUpdated = lastUpdated;
+        this.name = name;
+        this.birthDate = birthDate;
+        this.gender = gender;
+        this.age = age;
+        this.profilePicturePath = profilePicturePath;
+        this.photoIdentityPath = photoIdentityPath;
+        this.address = address;
+        this.userId = userId;
+        this.username = username;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public Date getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Date getBirthDate() {
+        return birthDate;
+    }
+
+    public String getGender() {
+        return gender;
+    }
+
+    public String getAge() {
+        return age;
+    }
+
+    public String getProfilePicturePath() {
+        return profilePicturePath;
+    }
+
+    public String getPhotoIdentityPath() {
+        return photoIdentityPath;
+    }
+
+    public Address getAddress() {
+        return address;
+    }
+
+    @JsonIgnore
+    public Long getUserId() {
+        return userId;
+    }
+
+    @JsonIgnore
+    public String getUsername() {
+        return username;
+    }
+
+    public Owner getUser() {
+        return this.userId == null ? null : new Owner(this.userId, this.username);
+    }
+
+    public static class Owner {
+        private final Long id;
+        private final String username;
+
+        private Owner(Long id, String username) {
+            this.id = id;
+            this.username = username;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+    }
+}
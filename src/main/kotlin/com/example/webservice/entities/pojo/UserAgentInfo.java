@@ -0,0 +1,57 @@
+package com.example.webservice.entities.pojo;
+
+public class UserAgentInfo {
+    public static final UserAgentInfo UNKNOWN = new UserAgentInfo(null, Platform.OTHER, null, null, false);
+
+    private final String details;
+    private final Platform platform;
+    private final String os;
+    private final String appVersion;
+    private final boolean bot;
+
+    public UserAgentInfo(String details, Platform platform, String os, String appVersion, boolean bot) {
+        this.details = details;
+        this.platform = platform;
+        this.os = os;
+        this.appVersion = appVersion;
+        this.bot = bot;
+    }
+
+    public enum Platform {
+        ANDROID("android"),
+        IOS("ios"),
+        WEB("web"),
+        BOT("bot"),
+        OTHER("other");
+
+        String value;
+
+        Platform(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    public Platform getPlatform() {
+        return platform;
+    }
+
+    public String getOs() {
+        return os;
+    }
+
+    public String getAppVersion() {
+        return appVersion;
+    }
+
+    public boolean isBot() {
+        return bot;
+    }
+}
@@ -1,19 +1,40 @@
 package com.example.webservice.entities.pojo;
 
-import com.example.webservice.entities.User;
+import com.example.webservice.entities.Role;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.security.core.GrantedAuthority;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Read model of a user for lists, filled by constructor expressions in UserRepository, roles come from the role mask.
+// Serialized with the names of the User entity the lists returned before: id, phone and roles as role objects.
 public class UserSlice {
     private Long userId;
+    private Date created;
     private String name;
     private String username;
+    private String email;
     private String phoneNumber;
+    private String userType;
+    private boolean enabled;
+    private int roleMask;
+    private Date lastSeen;
 
-    public UserSlice(User user) {
-        if (user == null) return;
-        this.userId = user.getId();
-        this.name = user.getName();
-        this.username = user.getUsername();
-        this.phoneNumber = user.getPhoneNumber();
+    public UserSlice(Long userId, Date created, String name, String username, String email, String phoneNumber,
+                     String userType, boolean enabled, int roleMask, Date lastSeen) {
+        this.userId = userId;
+        this.name = name;
+        this.username = username;
+        this.phoneNumber = phoneNumber;
+        this.created = created;
+        this.email = email;
+        this.userType = userType;
+        this.enabled = enabled;
+        this.roleMask = roleMask;
+        this.lastSeen = lastSeen;
     }
 
     public String getName() {
@@ -32,6 +53,7 @@ public class UserSlice {
         this.username = username;
     }
 
+    @JsonProperty("phone")
     public String getPhoneNumber() {
         return phoneNumber;
     }
@@ -49,6 +71,7 @@ public class UserSlice {
                 '}';
     }
 
+    @JsonProperty("id")
     public Long getUserId() {
         return userId;
     }
@@ -56,4 +79,63 @@ public class UserSlice {
     public void setUserId(Long userId) {
         this.userId = userId;
     }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public void setCreated(Date created) {
+        this.created = created;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getUserType() {
+        return userType;
+    }
+
+    public void setUserType(String userType) {
+        this.userType = userType;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @JsonIgnore
+    public int getRoleMask() {
+        return roleMask;
+    }
+
+    public void setRoleMask(int roleMask) {
+        this.roleMask = roleMask;
+    }
+
+    // role objects with name and role like User.getRoles, without the row ids
+    public List<Role> getRoles() {
+        List<Role> roles = new ArrayList<>();
+        for (GrantedAuthority authority : Role.authoritiesOf(this.roleMask)) {
+            Role.ERole eRole = Role.findERole(authority.getAuthority());
+            if (eRole != null) roles.add(new Role(eRole));
+        }
+        return roles;
+    }
+
+    public Date getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(Date lastSeen) {
+        this.lastSeen = lastSeen;
+    }
 }
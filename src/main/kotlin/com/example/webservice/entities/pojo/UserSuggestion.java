@@ -0,0 +1,38 @@
+package com.example.webservice.entities.pojo;
+
+import com.example.webservice.entities.User;
+
+// Autocomplete entry of UserSuggestIndex, only what the index matches on and a picker shows.
+public class UserSuggestion {
+    private Long userId;
+    private String name;
+    private String username;
+    private String phoneNumber;
+
+    public UserSuggestion(User user) {
+        this(user.getId(), user.getName(), user.getUsername(), user.getPhoneNumber());
+    }
+
+    public UserSuggestion(Long userId, String name, String username, String phoneNumber) {
+        this.userId = userId;
+        this.name = name;
+        this.username = username;
+        this.phoneNumber = phoneNumber;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+}
@@ -3,11 +3,13 @@ package com.example.webservice.exceptions.handler;
 import com.example.webservice.exceptions.exists.AlreadyExistsException;
 import com.example.webservice.exceptions.forbidden.ForbiddenException;
 import com.example.webservice.exceptions.invalid.InvalidException;
+import com.example.webservice.exceptions.limitExceed.PasswordHashingBusyException;
 import com.example.webservice.exceptions.notfound.ApartmentNotFoundException;
 import com.example.webservice.exceptions.notfound.FirebaseTokenNotFoundException;
 import com.example.webservice.exceptions.notfound.NotFoundException;
 import com.example.webservice.exceptions.notfound.ProfileNotFoundException;
 import com.example.webservice.exceptions.unknown.UnknownException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -55,6 +57,11 @@ public class ExHandler {
         return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body(ex.getMessage());
     }
 
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity handlePasswordHashingBusyException(PasswordHashingBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(ex.getMessage());
+    }
+
     @ExceptionHandler(FirebaseTokenNotFoundException.class)
     public void handleFirebaseTokenNotFoundException(FirebaseTokenNotFoundException ex) {
 //        return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).body(ex.getMessage());
@@ -0,0 +1,14 @@
+package com.example.webservice.exceptions.limitExceed;
+
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+
+// password hashing is saturated or timed out, the request may be retried later; answered with 503
+public class PasswordHashingBusyException extends InternalAuthenticationServiceException {
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -4,50 +4,62 @@ import com.example.webservice.commons.utils.NetworkUtil;
 import com.example.webservice.config.security.SecurityConfig;
 import com.example.webservice.entities.Activity;
 import com.example.webservice.entities.User;
+import com.example.webservice.entities.pojo.UserAgentInfo;
 import com.example.webservice.services.ActivityService;
+import com.example.webservice.services.impl.ActivityLoggingPolicy;
+import com.example.webservice.services.impl.PresenceTracker;
+import com.example.webservice.services.impl.UserAgentClassifier;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Component
 public class ActivityInterceptor extends HandlerInterceptorAdapter {
 
     private final ActivityService activityService;
+    private final UserAgentClassifier userAgentClassifier;
+    private final ActivityLoggingPolicy activityLoggingPolicy;
+    private final PresenceTracker presenceTracker;
 
     @Autowired
-    public ActivityInterceptor(ActivityService activityService) {
+    public ActivityInterceptor(ActivityService activityService, UserAgentClassifier userAgentClassifier, ActivityLoggingPolicy activityLoggingPolicy, PresenceTracker presenceTracker) {
         this.activityService = activityService;
+        this.userAgentClassifier = userAgentClassifier;
+        this.activityLoggingPolicy = activityLoggingPolicy;
+        this.presenceTracker = presenceTracker;
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        String userAgent = request.getHeader("User-Agent");
-        if (userAgent == null) userAgent = request.getHeader("user-agent");
-        String expires = response.getHeader("Expires");
+        User user = SecurityConfig.getCurrentUser();
+        if (user == null) return super.preHandle(request, response, handler);
+        // presence follows every authenticated request, regardless of the logging policy
+        this.presenceTracker.touch(user.getId());
+        String url = request.getRequestURI();
+        ActivityLoggingPolicy.Rule rule = this.activityLoggingPolicy.match(request.getMethod(), url);
+        if (!rule.sample()) return super.preHandle(request, response, handler);
+
+        UserAgentInfo userAgent = this.userAgentClassifier.classify(request.getHeader("User-Agent"));
         Activity activity = new Activity();
-        activity.setIp(NetworkUtil.getClientIP());
-        activity.setExpires(expires);
+        if (rule.captures(ActivityLoggingPolicy.Field.IP))
+            activity.setIp(NetworkUtil.getClientIP());
+        if (rule.captures(ActivityLoggingPolicy.Field.EXPIRES))
+            activity.setExpires(response.getHeader("Expires"));
         activity.setRequestMethod(request.getMethod());
-        activity.setUrl(request.getRequestURI());
-
-        Matcher m = Pattern.compile("\\(([^)]+)\\)").matcher(userAgent);
-        if (m.find()) {
-            activity.setUserAgent(m.group(1));
-        }
-
-        if (SecurityConfig.isAuthenticated()) {
-            User user = SecurityConfig.getCurrentUser();
-            activity.setUser(user);
-            if (!activity.getUrl().contains("image") && !activity.getUrl().equals("/"))
-                activity = activityService.save(activity);
-            return super.preHandle(request, response, handler);
-        }
+        activity.setUrl(url);
+        if (rule.captures(ActivityLoggingPolicy.Field.USER_AGENT))
+            activity.setUserAgent(userAgent.getDetails());
+        activity.setPlatform(userAgent.getPlatform().getValue());
+        activity.setOs(userAgent.getOs());
+        activity.setAppVersion(userAgent.getAppVersion());
+        activity.setBot(userAgent.isBot());
+        activity.setUser(user);
+        activity.setWeight(rule.getWeight());
+        this.activityService.saveAsync(activity);
         return super.preHandle(request, response, handler);
     }
 
-}
\ No newline at end of file
+}
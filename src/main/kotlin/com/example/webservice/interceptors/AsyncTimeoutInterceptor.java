@@ -0,0 +1,27 @@
+package com.example.webservice.interceptors;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.Callable;
+
+// Lets a handler give its own async processing, such as a StreamingResponseBody, another timeout than the
+// spring.mvc.async.request-timeout every other async request keeps. Applied right before the request goes async.
+public class AsyncTimeoutInterceptor implements CallableProcessingInterceptor {
+    private static final String TIMEOUT_ATTRIBUTE = AsyncTimeoutInterceptor.class.getName() + ".timeout";
+
+    // in milliseconds, zero or less never times out
+    public static void setTimeout(HttpServletRequest request, long timeoutMs) {
+        request.setAttribute(TIMEOUT_ATTRIBUTE, timeoutMs);
+    }
+
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+        Object timeout = request.getAttribute(TIMEOUT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (timeout instanceof Long && request instanceof AsyncWebRequest)
+            ((AsyncWebRequest) request).setTimeout((Long) timeout);
+    }
+}
@@ -4,6 +4,7 @@ import com.example.webservice.entities.Activity;
 import com.example.webservice.entities.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -14,6 +15,7 @@ public interface ActivityRepository extends JpaRepository<Activity,Long> {
     Activity findFirstBy();
     Activity findFirstByUserOrderByIdDesc(User user);
     Page<Activity> findByUser(User user, Pageable pageable);
+    Slice<Activity> findByUserAndIdLessThan(User user, Long id, Pageable pageable);
 
     Long countByCreatedBetween(Date fromDate, Date toDate);
 }
@@ -0,0 +1,29 @@
+package com.example.webservice.repositories;
+
+import com.example.webservice.entities.ActivityRollup;
+import com.example.webservice.entities.pojo.KeyCountPair;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface ActivityRollupRepository extends JpaRepository<ActivityRollup, Long> {
+    // ranges are half open, fromDate is the start of the first bucket and toDate is not included
+    @Query("SELECT r FROM ActivityRollup r WHERE r.granularity = :granularity AND r.metric = :metric AND r.dimension = :dimension " +
+            "AND r.bucket >= :fromDate AND r.bucket < :toDate ORDER BY r.bucket")
+    List<ActivityRollup> findSeries(@Param("granularity") String granularity, @Param("metric") String metric, @Param("dimension") String dimension, @Param("fromDate") Date fromDate, @Param("toDate") Date toDate);
+
+    @Query("SELECT COALESCE(SUM(r.total), 0) FROM ActivityRollup r WHERE r.granularity = :granularity AND r.metric = :metric " +
+            "AND r.dimension = '' AND r.bucket >= :fromDate AND r.bucket < :toDate")
+    Long sumTotal(@Param("granularity") String granularity, @Param("metric") String metric, @Param("fromDate") Date fromDate, @Param("toDate") Date toDate);
+
+    @Query("SELECT new com.example.webservice.entities.pojo.KeyCountPair(r.dimension, SUM(r.total)) FROM ActivityRollup r " +
+            "WHERE r.granularity = :granularity AND r.metric = :metric AND r.bucket >= :fromDate AND r.bucket < :toDate " +
+            "GROUP BY r.dimension ORDER BY SUM(r.total) DESC")
+    List<KeyCountPair> findTopDimensions(@Param("granularity") String granularity, @Param("metric") String metric, @Param("fromDate") Date fromDate, @Param("toDate") Date toDate, Pageable pageable);
+}
@@ -0,0 +1,10 @@
+package com.example.webservice.repositories;
+
+import com.example.webservice.entities.Counter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CounterRepository extends JpaRepository<Counter, Long> {
+    Counter findByName(String name);
+}
@@ -1,10 +1,27 @@
 package com.example.webservice.repositories;
 
 import com.example.webservice.entities.Profile;
+import com.example.webservice.entities.pojo.ProfileSlice;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface ProfileRepository extends JpaRepository<Profile,Long>{
+    // list read model, the owner's id and username come from the same query instead of one user load per profile
+    String SELECT_SLICE = "SELECT new com.example.webservice.entities.pojo.ProfileSlice(p.id, p.created, p.lastUpdated, p.name, " +
+            "p.birthDate, p.gender, p.age, p.profilePicturePath, p.photoIdentityPath, p.address, u.id, u.username) " +
+            "FROM Profile p LEFT JOIN p.user u";
+
     Profile findByUserUsername(String username);
     Profile findByUserId(Long userId);
 
+    @Query(value = SELECT_SLICE, countQuery = "SELECT COUNT(p) FROM Profile p")
+    Page<ProfileSlice> findSlices(Pageable pageable);
+
+    @Query(SELECT_SLICE + " WHERE p.id < :id")
+    Slice<ProfileSlice> findSlicesByIdLessThan(@Param("id") Long id, Pageable pageable);
+
 }
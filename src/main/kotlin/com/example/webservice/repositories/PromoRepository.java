@@ -2,6 +2,8 @@ package com.example.webservice.repositories;
 
 
 import com.example.webservice.entities.Promo;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -10,4 +12,6 @@ import java.util.List;
 @Repository
 public interface PromoRepository extends JpaRepository<Promo, Long> {
     List<Promo> findByActiveOrderByIdDesc(boolean isActive);
+
+    Slice<Promo> findByIdLessThan(Long id, Pageable pageable);
 }
@@ -2,37 +2,86 @@ package com.example.webservice.repositories;
 
 import com.example.webservice.entities.User;
 import com.example.webservice.entities.pojo.DateCountPair;
+import com.example.webservice.entities.pojo.UserSlice;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
+    // list read model: one query per page, roles come from role_mask instead of the m_users_roles join
+    String SELECT_SLICE = "SELECT new com.example.webservice.entities.pojo.UserSlice(u.id, u.created, u.name, u.username, u.email, " +
+            "u.phoneNumber, u.userType, u.enabled, u.roleMask, u.lastSeen) FROM User u";
+
     User findByUsername(String username);
 
     User findByEmail(String email);
 
     User findByPhoneNumber(String phoneNumber);
 
+    User findFirstByPhoneNormalized(String phoneNormalized);
+
+    // one indexed round trip for a login name that may be a username or a phone number,
+    // written out as a null parameter must not turn into IS NULL like in derived queries
+    @Query("SELECT u FROM User u WHERE u.username = :username OR u.phoneNormalized = :phone")
+    List<User> findByUsernameOrPhoneNormalized(@Param("username") String username, @Param("phone") String phoneNormalized);
+
+    @Query("SELECT CASE WHEN COUNT(u) > 0 THEN true ELSE false END FROM User u WHERE u.username = :username OR u.phoneNormalized = :phone")
+    boolean existsByUsernameOrPhoneNormalized(@Param("username") String username, @Param("phone") String phoneNormalized);
+
     Page<User> findByIdIn(List<Long> ids, Pageable pageable);
 
-    Page<User> findByRolesName(String role, Pageable pageable);
+    // role filters match Role.masksWith(eRole) on the indexed role_mask column, no join through m_users_roles
+    List<User> findByRoleMaskIn(Collection<Integer> roleMasks);
+
+    @Query("SELECT u.roleMask FROM User u WHERE u.id = :id")
+    Integer findRoleMaskById(@Param("id") Long id);
+
+    @Query(SELECT_SLICE + " WHERE u.id IN :ids")
+    List<UserSlice> findSlicesByIdIn(@Param("ids") Collection<Long> ids);
 
-    List<User> findByRolesName(String role);
+    @Modifying
+    @Query("UPDATE User u SET u.enabled = :enabled, u.lastUpdated = :lastUpdated, u.updatedBy = :updatedBy WHERE u.id IN :ids")
+    int setEnabledByIdIn(@Param("ids") Collection<Long> ids, @Param("enabled") boolean enabled, @Param("lastUpdated") Date lastUpdated, @Param("updatedBy") User updatedBy);
+
+    @Query(value = SELECT_SLICE, countQuery = "SELECT COUNT(u) FROM User u")
+    Page<UserSlice> findSlices(Pageable pageable);
+
+    @Query(value = SELECT_SLICE + " WHERE u.roleMask IN :roleMasks", countQuery = "SELECT COUNT(u) FROM User u WHERE u.roleMask IN :roleMasks")
+    Page<UserSlice> findSlicesByRoleMaskIn(@Param("roleMasks") Collection<Integer> roleMasks, Pageable pageable);
+
+    @Query(SELECT_SLICE + " WHERE u.id < :id")
+    Slice<UserSlice> findSlicesByIdLessThan(@Param("id") Long id, Pageable pageable);
+
+    @Query(SELECT_SLICE + " WHERE u.roleMask IN :roleMasks AND u.id < :id")
+    Slice<UserSlice> findSlicesByRoleMaskInAndIdLessThan(@Param("roleMasks") Collection<Integer> roleMasks, @Param("id") Long id, Pageable pageable);
 
     Page<User> findByUsernameContaining(String query, Pageable pageable);
 
     @Query("SELECT u FROM User u WHERE u.name LIKE %:query% OR u.username LIKE %:query%")
     Page<User> searchByNameOrUsername(@Param("query") String query, Pageable pageable);
 
+    // ranked by relevance, ft_users_search is created by UserBackfillService
+    @Query(value = SELECT_SLICE + " WHERE match_against(u.name, u.username, u.phoneNormalized, :query) > 0 " +
+            "ORDER BY match_against(u.name, u.username, u.phoneNormalized, :query) DESC",
+            countQuery = "SELECT COUNT(u) FROM User u WHERE match_against(u.name, u.username, u.phoneNormalized, :query) > 0")
+    Page<UserSlice> searchSlices(@Param("query") String query, Pageable pageable);
+
+    @Query(value = SELECT_SLICE + " WHERE u.username LIKE :prefix% OR u.name LIKE :prefix% OR u.phoneNormalized LIKE :prefix%",
+            countQuery = "SELECT COUNT(u) FROM User u WHERE u.username LIKE :prefix% OR u.name LIKE :prefix% OR u.phoneNormalized LIKE :prefix%")
+    Page<UserSlice> searchSlicesByPrefix(@Param("prefix") String prefix, Pageable pageable);
+
     Long countByCreatedBetween(Date fromDate, Date toDate);
 
-    @Query("SELECT new com.example.webservice.entities.pojo.DateCountPair(u.created, count(u.id)) FROM User u WHERE u.created BETWEEN :fromDate AND :toDate")
+    @Query("SELECT new com.example.webservice.entities.pojo.DateCountPair(FUNCTION('DATE', u.created), count(u.id)) FROM User u WHERE u.created BETWEEN :fromDate AND :toDate GROUP BY FUNCTION('DATE', u.created)")
     List<DateCountPair> countUsersInAPeriod(@Param("fromDate") Date fromDate, @Param("toDate") Date toDate);
 }
@@ -0,0 +1,24 @@
+package com.example.webservice.services;
+
+import com.example.webservice.entities.Activity;
+import com.example.webservice.entities.ActivityRollup;
+import com.example.webservice.entities.pojo.AdminStats;
+import com.example.webservice.entities.pojo.KeyCountPair;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public interface ActivityRollupService {
+    void record(List<Activity> activities);
+
+    void recordRegistration(Date created);
+
+    Map<Date, Long> getSeries(ActivityRollup.Metric metric, ActivityRollup.Granularity granularity, Date fromDate, Date toDate);
+
+    long getTotal(ActivityRollup.Metric metric, ActivityRollup.Granularity granularity, Date fromDate, Date toDate);
+
+    List<KeyCountPair> getTopUrls(Date fromDate, Date toDate, int limit);
+
+    AdminStats getAdminStats(Date fromDate, Date toDate);
+}
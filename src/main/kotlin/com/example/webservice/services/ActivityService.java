@@ -3,21 +3,31 @@ package com.example.webservice.services;
 import com.example.webservice.entities.Activity;
 import com.example.webservice.entities.User;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
+import java.util.Date;
 import java.util.List;
 
 public interface ActivityService {
 
     Activity save(Activity activity);
 
+    void saveAsync(Activity activity);
+
     Activity findFirst();
 
     Activity findLast(User user);
 
+    Date findLastSeen(User user);
+
     Page<Activity> findByUser(User user, int page, int size);
 
+    Slice<Activity> findByUser(User user, Long afterId, int size);
+
     Activity findOne(long id);
 
+    // loads the whole table, use ExportService for bulk reads
+    @Deprecated
     List<Activity> findAll();
 
     void delete(Long id);
@@ -0,0 +1,34 @@
+package com.example.webservice.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+public interface ExportService {
+    enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    void exportActivities(Date fromDate, Date toDate, Format format, OutputStream out) throws IOException;
+
+    void exportUsers(Date fromDate, Date toDate, String role, Format format, OutputStream out) throws IOException;
+
+    void exportProfiles(Date fromDate, Date toDate, Format format, OutputStream out) throws IOException;
+}
@@ -1,6 +1,7 @@
 package com.example.webservice.services;
 
 import com.example.webservice.entities.Profile;
+import com.example.webservice.entities.pojo.ProfileSlice;
 import com.example.webservice.exceptions.exists.UserAlreadyExistsException;
 import com.example.webservice.exceptions.forbidden.ForbiddenException;
 import com.example.webservice.exceptions.invalid.UserInvalidException;
@@ -8,6 +9,7 @@ import com.example.webservice.exceptions.notfound.NotFoundException;
 import com.example.webservice.exceptions.notfound.ProfileNotFoundException;
 import com.example.webservice.exceptions.nullpointer.NullPasswordException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -22,9 +24,13 @@ public interface ProfileService {
 
     Profile getProfileByUsername(String username) throws ProfileNotFoundException, ForbiddenException;
 
+    // loads the whole table, use ExportService for bulk reads
+    @Deprecated
     List<Profile> getAllProfile();
 
-    Page<Profile> getAllProfilePaginated(int pageNumber);
+    Page<ProfileSlice> getAllProfilePaginated(int pageNumber);
+
+    Slice<ProfileSlice> getAllProfileAfter(Long afterId);
 
     Long countProfile();
 
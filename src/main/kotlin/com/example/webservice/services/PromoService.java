@@ -9,6 +9,7 @@ import com.example.webservice.exceptions.invalid.InvalidException;
 import com.example.webservice.exceptions.notfound.NotFoundException;
 import com.example.webservice.exceptions.unknown.UnknownException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.naming.LimitExceededException;
@@ -17,6 +18,8 @@ import java.util.List;
 
 public interface PromoService {
     Page<Promo> findAll(int page);
+
+    Slice<Promo> findAllAfter(Long afterId);
     Promo save(Promo promo) throws InvalidException;
     Promo findOne(Long id) throws NotFoundException;
     List<Promo> getLatestPromotions();
@@ -0,0 +1,11 @@
+package com.example.webservice.services;
+
+import com.example.webservice.entities.pojo.ImportResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface UserImportService {
+    // rows are name, username, email, phone, password and userType, username defaults to the phone number
+    ImportResult importUsers(InputStream in, ExportService.Format format) throws IOException;
+}
@@ -1,6 +1,8 @@
 package com.example.webservice.services;
 
 import com.example.webservice.entities.User;
+import com.example.webservice.entities.pojo.UserSlice;
+import com.example.webservice.entities.pojo.UserSuggestion;
 import com.example.webservice.exceptions.exists.UserAlreadyExistsException;
 import com.example.webservice.exceptions.forbidden.ForbiddenException;
 import com.example.webservice.exceptions.invalid.InvalidException;
@@ -9,8 +11,10 @@ import com.example.webservice.exceptions.notfound.UserNotFoundException;
 import com.example.webservice.exceptions.nullpointer.NullPasswordException;
 import com.example.webservice.exceptions.unknown.UnknownException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -23,16 +27,26 @@ public interface UserService {
 
     User findByUsernameOrPhone(String usernameOrPhone) throws UserNotFoundException;
 
-    Page<User> searchUser(String query, int page, int size);
+    Page<UserSlice> searchUser(String query, int page, int size);
 
-    Page<User> findAll(int page);
+    List<UserSuggestion> suggest(String prefix, int limit);
 
-    Page<User> findByRole(String role, int page);
+    // list endpoints read UserSlice projections, one query per page and no managed entities
+    Page<UserSlice> findAll(int page);
+
+    Page<UserSlice> findByRole(String role, int page);
+
+    Slice<UserSlice> findAllAfter(Long afterId);
+
+    Slice<UserSlice> findByRoleAfter(String role, Long afterId);
 
     List<User> findByRole(String role);
 
     User findOne(Long id) throws UserNotFoundException;
 
+    // findOne and the lookups by username or phone share cached users with other requests, changes start from this copy
+    User findOneForUpdate(Long id) throws UserNotFoundException;
+
     User save(User user) throws UserAlreadyExistsException, UserInvalidException, NullPasswordException;
 
     boolean exists(User user);
@@ -54,7 +68,15 @@ public interface UserService {
 
     User setPassword(Long id, String newPassword) throws NullPasswordException, UserNotFoundException, InvalidException, ForbiddenException;
 
+    // stores an already encoded password, used to rehash on login when the bcrypt cost changes
+    User updatePasswordHash(Long id, String encodedPassword) throws UserNotFoundException;
+
     void handlePasswordResetRequest(String username) throws UserNotFoundException, ForbiddenException, UnknownException;
 
     User setRoles(Long id, String[] roles) throws UserNotFoundException, UserAlreadyExistsException, NullPasswordException, UserInvalidException;
+
+    // bulk versions for moderation, one transaction each, return the users that were changed
+    List<UserSlice> setRoles(Collection<Long> ids, Collection<String> roles) throws InvalidException;
+
+    List<UserSlice> setEnabled(Collection<Long> ids, boolean enabled) throws InvalidException;
 }
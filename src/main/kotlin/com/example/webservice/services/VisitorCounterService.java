@@ -0,0 +1,11 @@
+package com.example.webservice.services;
+
+public interface VisitorCounterService {
+    long increment();
+
+    long increment(long count);
+
+    long getTotal();
+
+    void checkpoint();
+}
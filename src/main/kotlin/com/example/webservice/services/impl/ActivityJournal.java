@@ -0,0 +1,258 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.entities.Activity;
+import com.example.webservice.entities.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+// Append-only file sink for activity logs. Records go into fixed size slots of memory mapped segment files,
+// segments are rotated by size and age and replayed into activity_logs in the background.
+@Service
+public class ActivityJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActivityJournal.class);
+    private static final int RECORD_SIZE = 1024;
+    // written after the payload, a slot without it is either empty or torn by a crash
+    private static final int COMMITTED = 0x41435432;
+    // marker of slots written before records carried a weight
+    private static final int COMMITTED_V1 = 0x41435431;
+    private static final String OPEN_SUFFIX = ".open";
+    private static final String CLOSED_SUFFIX = ".journal";
+    private static final String POSITION_SUFFIX = ".pos";
+
+    private final ActivityLogWriter activityLogWriter;
+
+    @Value("${activity.sink}")
+    private String sink;
+    @Value("${activity.journal.path}")
+    private String path;
+    @Value("${activity.journal.segmentSize}")
+    private int segmentSize;
+    @Value("${activity.journal.rotateIntervalMs}")
+    private long rotateIntervalMs;
+    @Value("${activity.journal.replayBatchSize}")
+    private int replayBatchSize;
+
+    private Path directory;
+    private Path segment;
+    private MappedByteBuffer buffer;
+    private long segmentId;
+    private long segmentOpened;
+
+    @Autowired
+    public ActivityJournal(ActivityLogWriter activityLogWriter) {
+        this.activityLogWriter = activityLogWriter;
+    }
+
+    @PostConstruct
+    private void start() {
+        this.segmentSize = Math.max(this.segmentSize, RECORD_SIZE) / RECORD_SIZE * RECORD_SIZE;
+        if (this.replayBatchSize <= 0) this.replayBatchSize = 1;
+        try {
+            Path directory = Paths.get(this.path);
+            boolean enabled = this.isEnabled();
+            // with another sink only segments left from a run with the journal are replayed, nothing is created
+            if (!enabled && !Files.isDirectory(directory)) return;
+            if (enabled) Files.createDirectories(directory);
+            // segments left open by a crash hold committed records followed by empty slots, replay them as usual
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + OPEN_SUFFIX)) {
+                for (Path open : stream)
+                    Files.move(open, closedPath(open), StandardCopyOption.ATOMIC_MOVE);
+            }
+            if (enabled || !closedSegments(directory).isEmpty()) this.directory = directory;
+        } catch (IOException e) {
+            LOGGER.error("Activity journal is not available at " + this.path, e);
+        }
+    }
+
+    private boolean isEnabled() {
+        return "journal".equalsIgnoreCase(this.sink);
+    }
+
+    public void append(Activity activity) throws IOException {
+        if (activity == null) throw new IllegalArgumentException("Activity can not be null!");
+        // encode outside the lock, the critical section is a single copy into the mapped segment
+        byte[] record = encode(activity);
+        synchronized (this) {
+            if (this.directory == null || !this.isEnabled()) throw new IOException("Activity journal is not available at " + this.path);
+            if (this.buffer == null || this.buffer.remaining() < RECORD_SIZE || this.isExpired())
+                this.rotate();
+            int start = this.buffer.position();
+            this.buffer.position(start + 4);
+            this.buffer.put(record);
+            this.buffer.putInt(start, COMMITTED);
+            this.buffer.position(start + RECORD_SIZE);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${activity.journal.replayIntervalMs}")
+    public void replay() {
+        if (this.directory == null) return;
+        try {
+            this.closeIfExpired();
+            for (Path segment : this.closedSegments())
+                this.replay(segment);
+        } catch (IOException | RuntimeException e) {
+            // the segment stays on disk and is retried from its last saved position
+            LOGGER.warn("Could not replay activity journal, will retry", e);
+        }
+    }
+
+    private void replay(Path segment) throws IOException {
+        Path positionFile = segment.resolveSibling(segment.getFileName() + POSITION_SUFFIX);
+        int position = Files.exists(positionFile)
+                ? Integer.parseInt(new String(Files.readAllBytes(positionFile), StandardCharsets.UTF_8).trim()) : 0;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<Activity> batch = new ArrayList<>(this.replayBatchSize);
+            int marker;
+            while (position + RECORD_SIZE <= buffer.capacity()
+                    && ((marker = buffer.getInt(position)) == COMMITTED || marker == COMMITTED_V1)) {
+                batch.add(decode(buffer, position + 4, marker == COMMITTED));
+                position += RECORD_SIZE;
+                if (batch.size() >= this.replayBatchSize) {
+                    this.activityLogWriter.write(batch);
+                    batch.clear();
+                    Files.write(positionFile, String.valueOf(position).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            if (!batch.isEmpty()) this.activityLogWriter.write(batch);
+        }
+        Files.deleteIfExists(segment);
+        Files.deleteIfExists(positionFile);
+    }
+
+    private synchronized void closeIfExpired() throws IOException {
+        if (this.buffer != null && this.isExpired()) this.closeSegment();
+    }
+
+    private boolean isExpired() {
+        return System.currentTimeMillis() - this.segmentOpened >= this.rotateIntervalMs;
+    }
+
+    private void rotate() throws IOException {
+        this.closeSegment();
+        // ids are start times, kept strictly increasing so names sort in write order
+        this.segmentId = Math.max(System.currentTimeMillis(), this.segmentId + 1);
+        Path segment = this.directory.resolve(String.format("activity-%013d%s", this.segmentId, OPEN_SUFFIX));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        }
+        this.segment = segment;
+        this.segmentOpened = System.currentTimeMillis();
+    }
+
+    private void closeSegment() throws IOException {
+        if (this.buffer == null) return;
+        MappedByteBuffer buffer = this.buffer;
+        this.buffer = null;
+        if (buffer.position() == 0) {
+            Files.deleteIfExists(this.segment);
+            return;
+        }
+        buffer.force();
+        Files.move(this.segment, closedPath(this.segment), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Path> closedSegments() throws IOException {
+        return closedSegments(this.directory);
+    }
+
+    private static List<Path> closedSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + CLOSED_SUFFIX)) {
+            for (Path segment : stream) segments.add(segment);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    @PreDestroy
+    private synchronized void stop() throws IOException {
+        if (this.directory != null) this.closeSegment();
+    }
+
+    private static Path closedPath(Path open) {
+        String name = open.getFileName().toString();
+        return open.resolveSibling(name.substring(0, name.length() - OPEN_SUFFIX.length()) + CLOSED_SUFFIX);
+    }
+
+    // slot layout after the commit marker: created, user id, total visitors, bot flag, weight, then length prefixed
+    // strings; longer values are cut so the record fits, the user agent last as it is the one that can spare it
+    private static byte[] encode(Activity activity) {
+        ByteBuffer out = ByteBuffer.allocate(RECORD_SIZE - 4);
+        out.putLong(activity.getCreated() == null ? System.currentTimeMillis() : activity.getCreated().getTime());
+        out.putLong(activity.getUser() == null || activity.getUser().getId() == null ? 0 : activity.getUser().getId());
+        out.putLong(activity.getTotalVisitors() == null ? -1 : activity.getTotalVisitors());
+        out.put((byte) (activity.isBot() ? 1 : 0));
+        out.putInt(activity.getWeight());
+        String[] values = {activity.getIp(), activity.getExpires(), activity.getRequestMethod(), activity.getPlatform(),
+                activity.getOs(), activity.getAppVersion(), activity.getUrl(), activity.getUserAgent()};
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                out.putShort((short) -1);
+                continue;
+            }
+            byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, out.remaining() - 2 * (values.length - i));
+            out.putShort((short) length);
+            out.put(bytes, 0, length);
+        }
+        return out.array();
+    }
+
+    private static Activity decode(ByteBuffer buffer, int offset, boolean weighted) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset);
+        Activity activity = new Activity();
+        activity.setCreated(new Date(in.getLong()));
+        long userId = in.getLong();
+        if (userId != 0) {
+            // only the foreign key is written, there is no need to load the user
+            User user = new User();
+            user.setId(userId);
+            activity.setUser(user);
+            // activities are logged for the signed in user, who is also their creator
+            activity.setCreatedBy(user);
+        }
+        long totalVisitors = in.getLong();
+        activity.setTotalVisitors(totalVisitors < 0 ? null : totalVisitors);
+        activity.setBot(in.get() == 1);
+        if (weighted) activity.setWeight(in.getInt());
+        activity.setIp(readString(in));
+        activity.setExpires(readString(in));
+        activity.setRequestMethod(readString(in));
+        activity.setPlatform(readString(in));
+        activity.setOs(readString(in));
+        activity.setAppVersion(readString(in));
+        activity.setUrl(readString(in));
+        activity.setUserAgent(readString(in));
+        return activity;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
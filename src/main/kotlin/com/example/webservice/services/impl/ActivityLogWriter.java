@@ -0,0 +1,123 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.entities.Activity;
+import com.example.webservice.repositories.ActivityRepository;
+import com.example.webservice.services.ActivityRollupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class ActivityLogWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActivityLogWriter.class);
+
+    private final ActivityRepository activityRepo;
+    private final ActivityRollupService activityRollupService;
+
+    @Value("${activity.writer.queueCapacity}")
+    private int queueCapacity;
+    @Value("${activity.writer.flushSize}")
+    private int flushSize;
+    @Value("${activity.writer.flushIntervalMs}")
+    private long flushIntervalMs;
+    @Value("${activity.writer.blockWhenFull}")
+    private boolean blockWhenFull;
+
+    private BlockingQueue<Activity> queue;
+    private ScheduledExecutorService executor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Autowired
+    public ActivityLogWriter(ActivityRepository activityRepo, ActivityRollupService activityRollupService) {
+        this.activityRepo = activityRepo;
+        this.activityRollupService = activityRollupService;
+    }
+
+    @PostConstruct
+    private void start() {
+        if (this.flushSize <= 0) this.flushSize = 1;
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.queueCapacity, this.flushSize));
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "activity-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::flush, this.flushIntervalMs, this.flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // when the queue is full the record is either dropped or the caller waits, see activity.writer.blockWhenFull
+    public boolean enqueue(Activity activity) {
+        if (activity == null) throw new IllegalArgumentException("Activity can not be null!");
+        boolean accepted;
+        if (this.blockWhenFull) {
+            try {
+                this.queue.put(activity);
+                accepted = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                accepted = false;
+            }
+        } else {
+            accepted = this.queue.offer(activity);
+        }
+        if (!accepted && this.dropped.incrementAndGet() % 1000 == 1)
+            LOGGER.warn("Activity log queue is full, dropped {} records so far", this.dropped.get());
+
+        if (this.queue.size() >= this.flushSize && !this.executor.isShutdown()
+                && this.flushRequested.compareAndSet(false, true))
+            this.executor.execute(this::flush);
+        return accepted;
+    }
+
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    public int getPendingCount() {
+        return this.queue.size();
+    }
+
+    private void flush() {
+        this.flushRequested.set(false);
+        List<Activity> batch = new ArrayList<>(this.flushSize);
+        while (this.queue.drainTo(batch, this.flushSize) > 0) {
+            try {
+                this.write(batch);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not write " + batch.size() + " activity records", e);
+            }
+            batch.clear();
+        }
+    }
+
+    // also used by the journal replayer, failures to save are thrown so the caller can retry
+    void write(List<Activity> batch) {
+        // saveAll runs in one transaction, hibernate groups the inserts into jdbc batches
+        this.activityRepo.saveAll(batch);
+        try {
+            this.activityRollupService.record(batch);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not update activity rollups for " + batch.size() + " records", e);
+        }
+    }
+
+    @PreDestroy
+    private void stop() throws InterruptedException {
+        this.executor.shutdown();
+        if (!this.executor.awaitTermination(this.flushIntervalMs * 2, TimeUnit.MILLISECONDS))
+            this.executor.shutdownNow();
+        // write whatever is still buffered before the datasource goes away
+        this.flush();
+    }
+}
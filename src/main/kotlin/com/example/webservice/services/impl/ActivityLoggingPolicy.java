@@ -0,0 +1,146 @@
+package com.example.webservice.services.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Decides per request whether an activity is logged, at which sampling rate and with which optional fields.
+ * Rules are read from activity.policy.rules, separated by ';', each as
+ *     <METHODS|*> <ant pattern> [off] [sample=<rate>] [fields=<ip,userAgent,expires>]
+ * and the first matching rule wins. Requests matching no rule are logged in full.
+ */
+@Service
+public class ActivityLoggingPolicy {
+    public enum Field {
+        IP, USER_AGENT, EXPIRES
+    }
+
+    private static final Rule DEFAULT = new Rule(null, null, true, 1, EnumSet.allOf(Field.class));
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final List<Rule> rules;
+    // request paths carry ids, the cache is bounded and keeps only the hot ones
+    private final Cache<String, Rule> matches;
+
+    @Autowired
+    public ActivityLoggingPolicy(@Value("${activity.policy.rules}") String rules,
+                                 @Value("${activity.policy.cacheSize}") int cacheSize) {
+        this.rules = Collections.unmodifiableList(parse(rules));
+        this.matches = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public Rule match(String method, String path) {
+        if (this.rules.isEmpty()) return DEFAULT;
+        try {
+            return this.matches.get(method + ' ' + path, () -> this.find(method, path));
+        } catch (ExecutionException e) {
+            return DEFAULT;
+        }
+    }
+
+    public List<Rule> getRules() {
+        return this.rules;
+    }
+
+    private Rule find(String method, String path) {
+        for (Rule rule : this.rules)
+            if ((rule.methods == null || rule.methods.contains(method)) && this.pathMatcher.match(rule.pattern, path))
+                return rule;
+        return DEFAULT;
+    }
+
+    static List<Rule> parse(String rules) {
+        List<Rule> parsed = new ArrayList<>();
+        if (rules == null) return parsed;
+        for (String definition : rules.split(";")) {
+            String[] tokens = definition.trim().split("\\s+");
+            if (tokens.length == 1 && tokens[0].isEmpty()) continue;
+            if (tokens.length < 2) throw new IllegalArgumentException("Invalid activity policy rule: " + definition);
+
+            Set<String> methods = tokens[0].equals("*") ? null : new HashSet<>(Arrays.asList(tokens[0].toUpperCase().split(",")));
+            boolean enabled = true;
+            double sampleRate = 1;
+            Set<Field> fields = EnumSet.allOf(Field.class);
+            for (int i = 2; i < tokens.length; i++) {
+                String token = tokens[i];
+                if (token.equals("off")) enabled = false;
+                else if (token.startsWith("sample=")) sampleRate = Double.parseDouble(token.substring("sample=".length()));
+                else if (token.startsWith("fields=")) fields = parseFields(token.substring("fields=".length()));
+                else throw new IllegalArgumentException("Invalid activity policy rule: " + definition);
+            }
+            if (sampleRate <= 0 || sampleRate > 1)
+                throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + definition);
+            parsed.add(new Rule(methods, tokens[1], enabled, sampleRate, fields));
+        }
+        return parsed;
+    }
+
+    private static Set<Field> parseFields(String fields) {
+        Set<Field> parsed = EnumSet.noneOf(Field.class);
+        for (String field : fields.split(",")) {
+            if (field.isEmpty()) continue;
+            // ip, userAgent, expires
+            parsed.add(Field.valueOf(field.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase()));
+        }
+        return parsed;
+    }
+
+    public static final class Rule {
+        private final Set<String> methods;
+        private final String pattern;
+        private final boolean enabled;
+        private final double sampleRate;
+        // every kept record stands for this many requests
+        private final int weight;
+        private final Set<Field> fields;
+
+        private Rule(Set<String> methods, String pattern, boolean enabled, double sampleRate, Set<Field> fields) {
+            this.methods = methods == null ? null : Collections.unmodifiableSet(methods);
+            this.pattern = pattern;
+            this.enabled = enabled;
+            this.sampleRate = sampleRate;
+            this.weight = (int) Math.round(1 / sampleRate);
+            this.fields = Collections.unmodifiableSet(fields);
+        }
+
+        public boolean sample() {
+            return this.enabled && (this.sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < this.sampleRate);
+        }
+
+        public boolean captures(Field field) {
+            return this.fields.contains(field);
+        }
+
+        public Set<String> getMethods() {
+            return methods;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public Set<Field> getFields() {
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.webservice.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.example.webservice.services.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Keeps activity_logs range partitioned by month on `created`, adds upcoming months and, when a retention is set,
+// archives expired months to files before dropping them. Converting the table is a separate one time migration.
+@Service
+public class ActivityPartitionService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActivityPartitionService.class);
+    private static final String TABLE = "activity_logs";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExportService exportService;
+
+    @Value("${activity.partitions.enabled}")
+    private boolean enabled;
+    @Value("${activity.partitions.retentionMonths}")
+    private int retentionMonths;
+    @Value("${activity.partitions.monthsAhead}")
+    private int monthsAhead;
+    @Value("${activity.partitions.archivePath}")
+    private String archivePath;
+
+    @Autowired
+    public ActivityPartitionService(JdbcTemplate jdbcTemplate, ExportService exportService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exportService = exportService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        this.maintain();
+    }
+
+    @Scheduled(cron = "${activity.partitions.cron}")
+    public synchronized void maintain() {
+        if (!this.enabled) return;
+        try {
+            if (!this.isPartitioned()) {
+                LOGGER.warn("{} is not partitioned yet, run the migration with POST /api/v1/admin/activities/partitions/migrate", TABLE);
+                return;
+            }
+            this.createUpcomingPartitions();
+            if (this.retentionMonths > 0) this.dropExpiredPartitions();
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not maintain partitions of " + TABLE, e);
+        }
+    }
+
+    /*
+     * One time conversion, started by an admin, with a full rewrite of the table into InnoDB. Returns false when the
+     * table is partitioned already. The foreign keys and unique indexes it drops are not declared on Activity, so
+     * schema update does not add them back.
+     */
+    public synchronized boolean migrate() {
+        if (this.isPartitioned()) return false;
+        this.partitionTable();
+        this.createUpcomingPartitions();
+        return true;
+    }
+
+    private boolean isPartitioned() {
+        Integer count = this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL", Integer.class, TABLE);
+        return count != null && count > 0;
+    }
+
+    // one time conversion: mysql requires the partition column in every unique key and allows no foreign keys
+    private void partitionTable() {
+        LOGGER.info("Converting {} to monthly range partitions", TABLE);
+        List<String> constraints = this.jdbcTemplate.queryForList("SELECT CONSTRAINT_NAME FROM information_schema.TABLE_CONSTRAINTS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND CONSTRAINT_TYPE = 'FOREIGN KEY'", String.class, TABLE);
+        for (String constraint : constraints)
+            this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP FOREIGN KEY `" + constraint + "`");
+        constraints = this.jdbcTemplate.queryForList("SELECT CONSTRAINT_NAME FROM information_schema.TABLE_CONSTRAINTS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND CONSTRAINT_TYPE = 'UNIQUE'", String.class, TABLE);
+        for (String constraint : constraints)
+            this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP INDEX `" + constraint + "`");
+
+        this.jdbcTemplate.update("UPDATE " + TABLE + " SET created = COALESCE(last_updated, NOW()) WHERE created IS NULL");
+        // schema update creates the table as MyISAM under MySQL5Dialect, mysql 8 only partitions InnoDB tables
+        this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " ENGINE=InnoDB, MODIFY created DATETIME NOT NULL, " +
+                "DROP PRIMARY KEY, ADD PRIMARY KEY (id, created)");
+
+        YearMonth current = YearMonth.now();
+        StringBuilder sql = new StringBuilder("ALTER TABLE " + TABLE + " PARTITION BY RANGE (TO_DAYS(created)) (");
+        // the first partition also holds everything older than the window, it goes once it leaves the window
+        for (YearMonth month = current.minusMonths(Math.max(this.retentionMonths, 0)); !month.isAfter(current.plusMonths(this.monthsAhead)); month = month.plusMonths(1))
+            sql.append(this.partitionDefinition(month)).append(", ");
+        sql.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN MAXVALUE)");
+        this.jdbcTemplate.execute(sql.toString());
+    }
+
+    private void createUpcomingPartitions() {
+        YearMonth last = this.latestPartitionMonth();
+        YearMonth target = YearMonth.now().plusMonths(this.monthsAhead);
+        if (last != null && !last.isBefore(target)) return;
+
+        YearMonth month = last == null ? YearMonth.now() : last.plusMonths(1);
+        StringBuilder sql = new StringBuilder("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO (");
+        for (; !month.isAfter(target); month = month.plusMonths(1))
+            sql.append(this.partitionDefinition(month)).append(", ");
+        sql.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN MAXVALUE)");
+        this.jdbcTemplate.execute(sql.toString());
+    }
+
+    private void dropExpiredPartitions() {
+        String oldest = YearMonth.now().minusMonths(this.retentionMonths).format(PARTITION_NAME);
+        for (String partition : this.partitionNames()) {
+            // names sort chronologically, keep the current window and p_future
+            if (partition.equals(FUTURE_PARTITION) || partition.compareTo(oldest) >= 0) continue;
+            try {
+                this.archive(partition);
+            } catch (IOException | RuntimeException e) {
+                // older partitions go first, keep this one and everything after it for the next run
+                LOGGER.error("Could not archive partition " + partition + " of " + TABLE + ", it is kept", e);
+                return;
+            }
+            LOGGER.info("Dropping expired partition {} of {}", partition, TABLE);
+            this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + partition);
+        }
+    }
+
+    // the partition holds every row before the end of its month, older partitions are dropped already
+    private void archive(String partition) throws IOException {
+        YearMonth month = YearMonth.parse(partition.substring(1), DateTimeFormatter.ofPattern("yyyyMM"));
+        Date end = Date.from(month.plusMonths(1).atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().minusMillis(1));
+        File directory = new File(this.archivePath);
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Could not create " + directory);
+        File file = new File(directory, TABLE + "-" + partition + "." + ExportService.Format.CSV.getExtension() + ".gz");
+        File partial = new File(directory, file.getName() + ".part");
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(partial)))) {
+            this.exportService.exportActivities(null, end, ExportService.Format.CSV, out);
+        }
+        if (!partial.renameTo(file)) throw new IOException("Could not move " + partial + " to " + file);
+        LOGGER.info("Archived partition {} of {} to {}", partition, TABLE, file);
+    }
+
+    private YearMonth latestPartitionMonth() {
+        YearMonth latest = null;
+        for (String partition : this.partitionNames()) {
+            if (partition.equals(FUTURE_PARTITION)) continue;
+            YearMonth month = YearMonth.of(Integer.parseInt(partition.substring(1, 5)), Integer.parseInt(partition.substring(5, 7)));
+            if (latest == null || month.isAfter(latest)) latest = month;
+        }
+        return latest;
+    }
+
+    private List<String> partitionNames() {
+        return this.jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                "ORDER BY PARTITION_ORDINAL_POSITION", String.class, TABLE);
+    }
+
+    // partition pYYYYMM holds the rows created before the first day of the following month
+    private String partitionDefinition(YearMonth month) {
+        LocalDate upperBound = month.plusMonths(1).atDay(1);
+        return "PARTITION " + month.format(PARTITION_NAME) + " VALUES LESS THAN (TO_DAYS('" + upperBound + "'))";
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.commons.utils.SchemaUtil;
+import com.example.webservice.entities.Activity;
+import com.example.webservice.entities.ActivityRollup;
+import com.example.webservice.entities.pojo.AdminStats;
+import com.example.webservice.entities.pojo.KeyCountPair;
+import com.example.webservice.repositories.ActivityRollupRepository;
+import com.example.webservice.services.ActivityRollupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.transaction.Transactional;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class ActivityRollupServiceImpl implements ActivityRollupService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActivityRollupServiceImpl.class);
+    private static final String ROLLUPS_TABLE = "activity_rollups";
+    private static final String UPSERT = "INSERT INTO " + ROLLUPS_TABLE + " (granularity, bucket, metric, dimension, total) " +
+            "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE total = total + VALUES(total)";
+    // one row per user and bucket, a user is counted as unique by whichever node inserts the row
+    private static final String USERS_TABLE = "activity_rollup_users";
+    private static final String INSERT_USER = "INSERT IGNORE INTO " + USERS_TABLE + " (granularity, bucket, user_id) VALUES (?, ?, ?)";
+    // marks the rollups as built, only the node that inserts it runs the backfill
+    private static final String BACKFILL_MARKER = "backfill";
+    private static final int MAX_DIMENSION_LENGTH = 191;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ActivityRollupRepository rollupRepo;
+    // activities created from here on are rolled up by the writer, the backfill takes the ones before
+    private final Timestamp startedAt = new Timestamp(System.currentTimeMillis());
+
+    @Value("${activity.rollups.uniqueUsersRetentionHours}")
+    private int uniqueUsersRetentionHours;
+
+    @Autowired
+    public ActivityRollupServiceImpl(JdbcTemplate jdbcTemplate, ActivityRollupRepository rollupRepo) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rollupRepo = rollupRepo;
+    }
+
+    // record commits the user rows and the totals they were counted in together, both tables must be transactional
+    @PostConstruct
+    private void createTables() {
+        this.jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + USERS_TABLE + " (" +
+                "granularity VARCHAR(8) NOT NULL, " +
+                "bucket DATETIME NOT NULL, " +
+                "user_id BIGINT NOT NULL, " +
+                "backfilled TINYINT(1) NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (granularity, bucket, user_id), " +
+                "KEY idx_activity_rollup_users_bucket (bucket)) ENGINE=InnoDB");
+        SchemaUtil.convertToInnoDB(this.jdbcTemplate, ROLLUPS_TABLE);
+    }
+
+    // the user rows and the totals they were counted in are committed together
+    @Override
+    @Transactional
+    public void record(List<Activity> activities) {
+        Map<List<Object>, Long> totals = new HashMap<>();
+        Set<List<Object>> users = new LinkedHashSet<>();
+        for (Activity activity : activities) {
+            Date created = activity.getCreated() == null ? new Date() : activity.getCreated();
+            Long userId = activity.getUser() == null ? null : activity.getUser().getId();
+            // sampled records are scaled back up, unique users are counted as seen since a weight says nothing about who
+            long weight = Math.max(activity.getWeight(), 1);
+            for (ActivityRollup.Granularity granularity : ActivityRollup.Granularity.values()) {
+                Timestamp bucket = bucketOf(created, granularity);
+                add(totals, granularity, bucket, ActivityRollup.Metric.HITS, "", weight);
+                if (userId != null) users.add(Arrays.asList(granularity.getValue(), bucket, userId));
+            }
+            // urls carry ids, per url counters are kept per day only to bound the number of rows
+            if (activity.getUrl() != null)
+                add(totals, ActivityRollup.Granularity.DAY, bucketOf(created, ActivityRollup.Granularity.DAY),
+                        ActivityRollup.Metric.URL_HITS, truncate(activity.getUrl()), weight);
+        }
+        this.countNewUsers(users, totals);
+        this.upsert(totals);
+    }
+
+    @Override
+    public void recordRegistration(Date created) {
+        if (created == null) created = new Date();
+        Map<List<Object>, Long> totals = new HashMap<>();
+        for (ActivityRollup.Granularity granularity : ActivityRollup.Granularity.values())
+            add(totals, granularity, bucketOf(created, granularity), ActivityRollup.Metric.NEW_USERS, "", 1);
+        this.upsert(totals);
+    }
+
+    // buckets are taken from the one fromDate falls in up to, but not including, toDate
+    @Override
+    public Map<Date, Long> getSeries(ActivityRollup.Metric metric, ActivityRollup.Granularity granularity, Date fromDate, Date toDate) {
+        Map<Date, Long> series = new LinkedHashMap<>();
+        List<ActivityRollup> rollups = this.rollupRepo.findSeries(granularity.getValue(), metric.getValue(), "",
+                bucketOf(fromDate, granularity), toDate);
+        for (ActivityRollup rollup : rollups)
+            series.put(rollup.getBucket(), rollup.getTotal());
+        return series;
+    }
+
+    @Override
+    public long getTotal(ActivityRollup.Metric metric, ActivityRollup.Granularity granularity, Date fromDate, Date toDate) {
+        Long total = this.rollupRepo.sumTotal(granularity.getValue(), metric.getValue(), bucketOf(fromDate, granularity), toDate);
+        return total == null ? 0 : total;
+    }
+
+    @Override
+    public List<KeyCountPair> getTopUrls(Date fromDate, Date toDate, int limit) {
+        if (limit <= 0) limit = 10;
+        return this.rollupRepo.findTopDimensions(ActivityRollup.Granularity.DAY.getValue(), ActivityRollup.Metric.URL_HITS.getValue(),
+                bucketOf(fromDate, ActivityRollup.Granularity.DAY), toDate, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public AdminStats getAdminStats(Date fromDate, Date toDate) {
+        AdminStats stats = new AdminStats();
+        stats.setNoOfUsers(this.getSeries(ActivityRollup.Metric.NEW_USERS, ActivityRollup.Granularity.DAY, fromDate, toDate));
+        stats.setNoOfActiveUsers(this.getSeries(ActivityRollup.Metric.UNIQUE_USERS, ActivityRollup.Granularity.DAY, fromDate, toDate));
+        stats.setNoOfDailyHits(this.getSeries(ActivityRollup.Metric.HITS, ActivityRollup.Granularity.DAY, fromDate, toDate));
+        stats.setNoOfHits(this.getTotal(ActivityRollup.Metric.HITS, ActivityRollup.Granularity.DAY, fromDate, toDate));
+        return stats;
+    }
+
+    /*
+     * Seeds the rollups from the raw tables the first time the application runs with an empty rollup table. Only
+     * rows created before this node started are taken, the writer rolls up the rest, and everything is added with
+     * upserts so totals the writer has written meanwhile are kept.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (this.rollupRepo.count() > 0) return;
+        // several nodes may start on an empty table at once
+        int claimed = this.jdbcTemplate.update("INSERT IGNORE INTO " + ROLLUPS_TABLE + " (granularity, bucket, metric, dimension, total) VALUES (?, ?, ?, '', 0)",
+                BACKFILL_MARKER, new Timestamp(0), BACKFILL_MARKER);
+        if (claimed == 0) return;
+        LOGGER.info("Building activity rollups from existing activity logs and users");
+        String[][] buckets = {
+                {ActivityRollup.Granularity.HOUR.getValue(), "DATE_FORMAT(created, '%Y-%m-%d %H:00:00')"},
+                {ActivityRollup.Granularity.DAY.getValue(), "DATE(created)"}
+        };
+        String insert = "INSERT INTO " + ROLLUPS_TABLE + " (granularity, bucket, metric, dimension, total) ";
+        String addTotal = " ON DUPLICATE KEY UPDATE total = total + VALUES(total)";
+        for (String[] bucket : buckets) {
+            this.jdbcTemplate.update(insert + "SELECT ?, " + bucket[1] + ", ?, '', SUM(weight) FROM activity_logs " +
+                    "WHERE created < ? GROUP BY " + bucket[1] + addTotal, bucket[0], ActivityRollup.Metric.HITS.getValue(), this.startedAt);
+            // users the writer has already counted in a bucket keep their row and are not added again
+            this.jdbcTemplate.update("INSERT IGNORE INTO " + USERS_TABLE + " (granularity, bucket, user_id, backfilled) " +
+                    "SELECT DISTINCT ?, " + bucket[1] + ", user_id, 1 FROM activity_logs WHERE created < ? AND user_id IS NOT NULL", bucket[0], this.startedAt);
+            this.jdbcTemplate.update(insert + "SELECT granularity, bucket, ?, '', COUNT(*) FROM " + USERS_TABLE + " " +
+                    "WHERE granularity = ? AND backfilled = 1 GROUP BY bucket" + addTotal, ActivityRollup.Metric.UNIQUE_USERS.getValue(), bucket[0]);
+            this.jdbcTemplate.update(insert + "SELECT ?, " + bucket[1] + ", ?, '', COUNT(*) FROM m_users " +
+                    "WHERE created < ? GROUP BY " + bucket[1] + addTotal, bucket[0], ActivityRollup.Metric.NEW_USERS.getValue(), this.startedAt);
+        }
+        this.jdbcTemplate.update(insert + "SELECT ?, DATE(created), ?, LEFT(url, " + MAX_DIMENSION_LENGTH + "), SUM(weight) FROM activity_logs " +
+                        "WHERE created < ? AND url IS NOT NULL GROUP BY DATE(created), LEFT(url, " + MAX_DIMENSION_LENGTH + ")" + addTotal,
+                ActivityRollup.Granularity.DAY.getValue(), ActivityRollup.Metric.URL_HITS.getValue(), this.startedAt);
+        this.jdbcTemplate.update("UPDATE " + USERS_TABLE + " SET backfilled = 0 WHERE backfilled = 1");
+    }
+
+    // user rows are only needed while activities of a bucket may still come in
+    @Scheduled(fixedDelayString = "${activity.rollups.evictIntervalMs}")
+    public void evictClosedBuckets() {
+        Timestamp threshold = new Timestamp(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(this.uniqueUsersRetentionHours));
+        try {
+            int deleted;
+            do {
+                deleted = this.jdbcTemplate.update("DELETE FROM " + USERS_TABLE + " WHERE bucket < ? LIMIT 10000", threshold);
+            } while (deleted > 0);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not evict unique users of closed buckets", e);
+        }
+    }
+
+    // inserts the user rows of the batch, users whose row is new are unique in their bucket
+    private void countNewUsers(Set<List<Object>> users, Map<List<Object>, Long> totals) {
+        if (users.isEmpty()) return;
+        List<List<Object>> keys = new ArrayList<>(users);
+        List<Object[]> args = new ArrayList<>(keys.size());
+        for (List<Object> key : keys)
+            args.add(key.toArray());
+        // one count per row, rewriteBatchedStatements would report them as unknown (-2)
+        int[] inserted = this.jdbcTemplate.batchUpdate(INSERT_USER, args);
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i] <= 0) continue;
+            List<Object> key = keys.get(i);
+            totals.merge(Arrays.asList(key.get(0), key.get(1), ActivityRollup.Metric.UNIQUE_USERS.getValue(), ""), 1L, Long::sum);
+        }
+    }
+
+    private void upsert(Map<List<Object>, Long> totals) {
+        if (totals.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(totals.size());
+        for (Map.Entry<List<Object>, Long> entry : totals.entrySet()) {
+            List<Object> key = entry.getKey();
+            args.add(new Object[]{key.get(0), key.get(1), key.get(2), key.get(3), entry.getValue()});
+        }
+        this.jdbcTemplate.batchUpdate(UPSERT, args);
+    }
+
+    private static void add(Map<List<Object>, Long> totals, ActivityRollup.Granularity granularity, Timestamp bucket,
+                            ActivityRollup.Metric metric, String dimension, long amount) {
+        totals.merge(Arrays.asList(granularity.getValue(), bucket, metric.getValue(), dimension), amount, Long::sum);
+    }
+
+    private static Timestamp bucketOf(Date date, ActivityRollup.Granularity granularity) {
+        LocalDateTime time = LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+        return Timestamp.valueOf(time.truncatedTo(granularity == ActivityRollup.Granularity.HOUR ? ChronoUnit.HOURS : ChronoUnit.DAYS));
+    }
+
+    private static String truncate(String value) {
+        return value.length() > MAX_DIMENSION_LENGTH ? value.substring(0, MAX_DIMENSION_LENGTH) : value;
+    }
+}
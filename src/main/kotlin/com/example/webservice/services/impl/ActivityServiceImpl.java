@@ -5,34 +5,62 @@ import com.example.webservice.entities.Activity;
 import com.example.webservice.entities.User;
 import com.example.webservice.repositories.ActivityRepository;
 import com.example.webservice.services.ActivityService;
+import com.example.webservice.services.VisitorCounterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.Date;
 import java.util.List;
 
 @Service
 public class ActivityServiceImpl implements ActivityService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActivityServiceImpl.class);
+
     private final ActivityRepository activityRepo;
+    private final ActivityLogWriter activityLogWriter;
+    private final ActivityJournal activityJournal;
+    private final VisitorCounterService visitorCounterService;
+    private final PresenceTracker presenceTracker;
+
+    @Value("${activity.sink}")
+    private String sink;
 
     @Autowired
-    public ActivityServiceImpl(ActivityRepository activityRepo) {
+    public ActivityServiceImpl(ActivityRepository activityRepo, ActivityLogWriter activityLogWriter, ActivityJournal activityJournal, VisitorCounterService visitorCounterService, PresenceTracker presenceTracker) {
         this.activityRepo = activityRepo;
+        this.activityLogWriter = activityLogWriter;
+        this.activityJournal = activityJournal;
+        this.visitorCounterService = visitorCounterService;
+        this.presenceTracker = presenceTracker;
     }
 
     public Activity save(Activity activity) {
-        if (activity.getId() == null) { // new activity (user logged in)
-            Activity firstActivity = this.findFirst();
-            if (firstActivity != null) {
-                Long total = firstActivity.getTotalVisitors();
-                activity.setTotalVisitors(++total);
-                firstActivity.setTotalVisitors(total);
-                this.activityRepo.save(firstActivity);
-            }
-        }
+        if (activity.getId() == null) // new activity (user logged in)
+            activity.setTotalVisitors(this.visitorCounterService.increment());
         return this.activityRepo.save(activity);
     }
 
+    @Override
+    public void saveAsync(Activity activity) {
+        if (activity.getCreated() == null) activity.setCreated(new Date());
+        // captured here, the writer and the journal replay run without the request's security context
+        if (activity.getCreatedBy() == null) activity.setCreatedBy(activity.getCurrentUser());
+        activity.setTotalVisitors(this.visitorCounterService.increment(activity.getWeight()));
+        if ("journal".equalsIgnoreCase(this.sink)) try {
+            this.activityJournal.append(activity);
+            return;
+        } catch (IOException e) {
+            LOGGER.error("Could not append to activity journal, writing to database instead", e);
+        }
+        this.activityLogWriter.enqueue(activity);
+    }
+
     @Override
     public Activity findFirst() {
         return this.activityRepo.findFirstBy();
@@ -43,11 +71,21 @@ public class ActivityServiceImpl implements ActivityService {
         return activityRepo.findFirstByUserOrderByIdDesc(user);
     }
 
+    @Override
+    public Date findLastSeen(User user) {
+        return user == null ? null : this.presenceTracker.getLastSeen(user.getId());
+    }
+
     @Override
     public Page<Activity> findByUser(User user, int page, int size) {
         return this.activityRepo.findByUser(user, PageAttr.getPageRequest(page,size));
     }
 
+    @Override
+    public Slice<Activity> findByUser(User user, Long afterId, int size) {
+        return this.activityRepo.findByUserAndIdLessThan(user, afterId, PageAttr.getSliceRequest(size));
+    }
+
     @Override
     public Activity findOne(long id) {
         return this.activityRepo.findById(id).orElse(null);
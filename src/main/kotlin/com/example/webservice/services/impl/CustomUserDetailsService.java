@@ -6,12 +6,13 @@ import com.example.webservice.exceptions.notfound.UserNotFoundException;
 import com.example.webservice.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserService userService;
     private final LoginAttemptService loginAttemptService;
@@ -40,4 +41,15 @@ public class CustomUserDetailsService implements UserDetailsService {
         return user;
     }
 
+    // called by spring security after a successful login when PasswordHashingService asks for a rehash
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        if (!(userDetails instanceof User)) return userDetails;
+        try {
+            return this.userService.updatePasswordHash(((User) userDetails).getId(), newPassword);
+        } catch (UserNotFoundException e) {
+            throw new UsernameNotFoundException("User doesn't exist!");
+        }
+    }
+
 }
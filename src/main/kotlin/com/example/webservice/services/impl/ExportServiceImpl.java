@@ -0,0 +1,170 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.entities.Role;
+import com.example.webservice.services.ExportService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Streams rows straight from a forward only result set to the response, nothing is collected in memory.
+@Service
+public class ExportServiceImpl implements ExportService {
+    private static final String ACTIVITIES = "SELECT a.id, a.created, a.user_id, a.request_method, a.url, a.ip, a.platform, a.os, " +
+            "a.app_version, a.bot, a.weight, a.user_agent FROM activity_logs a";
+    private static final String USERS = "SELECT u.id, u.created, u.name, u.username, u.email, u.phone_number, u.user_type, u.enabled, u.last_seen, " +
+            "(SELECT GROUP_CONCAT(r.role) FROM m_users_roles ur JOIN roles r ON r.id = ur.roles_id WHERE ur.user_id = u.id) AS roles FROM m_users u";
+    private static final String PROFILES = "SELECT p.id, p.created, p.user_id, p.name, p.birth_date, p.gender, p.age, p.flat, p.floor, p.house, " +
+            "p.road, p.area, p.village, p.post_office, p.post_code, p.police_station, p.addr_union, p.upazila, p.district FROM profiles p";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ExportServiceImpl(DataSource dataSource, ObjectMapper objectMapper, @Value("${export.fetchSize}") int fetchSize) {
+        // a template of its own, mysql streams row by row only with a fetch size of Integer.MIN_VALUE
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void exportActivities(Date fromDate, Date toDate, Format format, OutputStream out) throws IOException {
+        List<Object> args = new ArrayList<>();
+        String sql = ACTIVITIES + " WHERE 1 = 1" + createdBetween("a", fromDate, toDate, args);
+        this.export(sql, args, format, out);
+    }
+
+    @Override
+    public void exportUsers(Date fromDate, Date toDate, String role, Format format, OutputStream out) throws IOException {
+        List<Object> args = new ArrayList<>();
+        String sql = USERS + " WHERE 1 = 1" + createdBetween("u", fromDate, toDate, args);
+        if (role != null) {
+            Role.ERole eRole = Role.findERoleByName(role);
+            sql += " AND u.role_mask & ? <> 0";
+            args.add(eRole == null ? 0 : Role.maskOf(eRole));
+        }
+        this.export(sql, args, format, out);
+    }
+
+    @Override
+    public void exportProfiles(Date fromDate, Date toDate, Format format, OutputStream out) throws IOException {
+        List<Object> args = new ArrayList<>();
+        String sql = PROFILES + " WHERE 1 = 1" + createdBetween("p", fromDate, toDate, args);
+        this.export(sql, args, format, out);
+    }
+
+    private void export(String sql, List<Object> args, Format format, OutputStream out) throws IOException {
+        RowWriter writer = format == Format.CSV ? new CsvRowWriter(out) : new JsonRowWriter(this.objectMapper.getFactory().createGenerator(out));
+        try {
+            this.jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                try {
+                    writer.write(rs);
+                } catch (IOException e) {
+                    // the client went away, stop reading from the database
+                    throw new UncheckedIOException(e);
+                }
+            }, args.toArray());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            writer.flush();
+        }
+    }
+
+    private static String createdBetween(String alias, Date fromDate, Date toDate, List<Object> args) {
+        String condition = "";
+        if (fromDate != null) {
+            condition += " AND " + alias + ".created >= ?";
+            args.add(fromDate);
+        }
+        if (toDate != null) {
+            condition += " AND " + alias + ".created <= ?";
+            args.add(toDate);
+        }
+        return condition;
+    }
+
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+
+        void flush() throws IOException;
+    }
+
+    private static final class JsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        private JsonRowWriter(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            ResultSetMetaData meta = rs.getMetaData();
+            this.generator.writeStartObject();
+            for (int i = 1; i <= meta.getColumnCount(); i++)
+                this.generator.writeObjectField(meta.getColumnLabel(i), rs.getObject(i));
+            this.generator.writeEndObject();
+            this.generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.generator.flush();
+        }
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+        private boolean header = true;
+
+        private CsvRowWriter(OutputStream out) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            ResultSetMetaData meta = rs.getMetaData();
+            if (this.header) {
+                for (int i = 1; i <= meta.getColumnCount(); i++)
+                    this.writeValue(i, meta.getColumnLabel(i));
+                this.writer.write("\r\n");
+                this.header = false;
+            }
+            for (int i = 1; i <= meta.getColumnCount(); i++)
+                this.writeValue(i, rs.getObject(i));
+            this.writer.write("\r\n");
+        }
+
+        private void writeValue(int column, Object value) throws IOException {
+            if (column > 1) this.writer.write(',');
+            if (value == null) return;
+            String text = value.toString();
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                this.writer.write(text);
+                return;
+            }
+            this.writer.write('"');
+            this.writer.write(text.replace("\"", "\"\""));
+            this.writer.write('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.writer.flush();
+        }
+    }
+}
@@ -1,48 +1,26 @@
 package com.example.webservice.services.impl;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-
 @Service
 public class LoginAttemptService {
-    private final int MAX_ATTEMPT = 10;
-    private LoadingCache<String, Integer> attemptsCache;
+    private final RateLimitService rateLimitService;
 
-    public LoginAttemptService() {
-        super();
-        attemptsCache = CacheBuilder.newBuilder().
-                expireAfterWrite(1, TimeUnit.DAYS).build(new CacheLoader<String, Integer>() {
-            public Integer load(String key) {
-                return 0;
-            }
-        });
+    @Autowired
+    public LoginAttemptService(RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
     }
 
     public void loginSucceeded(String key) {
-        attemptsCache.invalidate(key);
+        this.rateLimitService.reset(RateLimitService.Action.LOGIN, key);
     }
 
     public void loginFailed(String key) {
-        int attempts;
-        try {
-            attempts = attemptsCache.get(key);
-        } catch (ExecutionException e) {
-            attempts = 0;
-        }
-        attempts++;
-        attemptsCache.put(key, attempts);
+        this.rateLimitService.record(RateLimitService.Action.LOGIN, key);
     }
 
     public boolean isBlocked(String key) {
-        try {
-            return attemptsCache.get(key) >= MAX_ATTEMPT;
-        } catch (ExecutionException e) {
-            return false;
-        }
+        return this.rateLimitService.isBlocked(RateLimitService.Action.LOGIN, key);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,156 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.commons.utils.PasswordUtil;
+import com.example.webservice.exceptions.limitExceed.PasswordHashingBusyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * The one password encoder of the application. Hashing runs on a small dedicated pool with a bounded queue so a
+ * burst of logins costs at most `threads` cores, callers beyond the queue are turned away at once instead of
+ * piling up behind bcrypt. Hashes made with a different cost than password.bcrypt.strength report
+ * upgradeEncoding, spring security then rehashes them on the next successful login.
+ */
+@Service
+public class PasswordHashingService implements PasswordEncoder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    @Value("${password.bcrypt.strength}")
+    private int strength;
+    @Value("${password.hashing.threads}")
+    private int threads;
+    @Value("${password.hashing.queueCapacity}")
+    private int queueCapacity;
+    @Value("${password.hashing.timeoutMs}")
+    private long timeoutMs;
+
+    private BCryptPasswordEncoder encoder;
+    private ThreadPoolExecutor executor;
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder hashingNanos = new LongAdder();
+
+    @PostConstruct
+    private void start() {
+        if (this.threads <= 0) this.threads = Runtime.getRuntime().availableProcessors();
+        // the encoder is thread safe, one instance and one SecureRandom for all hashes
+        this.encoder = new BCryptPasswordEncoder(this.strength, new SecureRandom());
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(this.queueCapacity, 1)), r -> {
+            Thread thread = new Thread(r, "password-hashing-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        PasswordUtil.setPasswordEncoder(this);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        this.encoded.increment();
+        return this.run(() -> this.encoder.encode(rawPassword));
+    }
+
+    // for bulk work that brings its own threads, see UserImportServiceImpl
+    public String encodeOnCallingThread(CharSequence rawPassword) {
+        this.encoded.increment();
+        return this.encoder.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        this.matched.increment();
+        return this.run(() -> this.encoder.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return encodedPassword != null && costOf(encodedPassword) != this.strength;
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = this.executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    this.hashingNanos.add(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.rejected.increment();
+            throw new PasswordHashingBusyException("Too many password checks in progress, please try again later.", e);
+        }
+        try {
+            return future.get(this.timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            this.timedOut.increment();
+            throw new PasswordHashingBusyException("Password check timed out, please try again later.", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException("Interrupted while checking password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // $2a$10$... -> 10, anything unreadable counts as outdated
+    private static int costOf(String encodedPassword) {
+        if (encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$' || encodedPassword.charAt(3) != '$')
+            return -1;
+        try {
+            return Integer.parseInt(encodedPassword.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long completed = this.executor.getCompletedTaskCount();
+        stats.put("strength", this.strength);
+        stats.put("threads", this.executor.getMaximumPoolSize());
+        stats.put("active", this.executor.getActiveCount());
+        stats.put("queued", this.executor.getQueue().size());
+        stats.put("queueCapacity", this.executor.getQueue().size() + this.executor.getQueue().remainingCapacity());
+        stats.put("completed", completed);
+        stats.put("encoded", this.encoded.sum());
+        stats.put("matched", this.matched.sum());
+        stats.put("rejected", this.rejected.sum());
+        stats.put("timedOut", this.timedOut.sum());
+        stats.put("avgHashMs", completed == 0 ? 0 : this.hashingNanos.sum() / completed / 1_000_000.0);
+        return stats;
+    }
+
+    @PreDestroy
+    private void stop() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(this.timeoutMs, TimeUnit.MILLISECONDS))
+                this.executor.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while stopping password hashing", e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.commons.LongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Last seen time of every user in memory, fed by the activity interceptor.
+ * - last seen lookups are a hash probe, users not seen since startup are loaded once from the database
+ * - online counts come from per minute buckets holding how many users were last seen in that minute
+ * - recently active users come from a ring of ids appended whenever a user's last seen minute moves
+ * Changes are written back to m_users.last_seen in batches.
+ */
+@Service
+public class PresenceTracker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PresenceTracker.class);
+    private static final int STRIPES = 16;
+    private static final int WINDOW_MINUTES = 60;
+    // stored for users that were looked up but never seen
+    private static final long NEVER = -1;
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${presence.recentSize}")
+    private int recentSize;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final long[] bucketMinutes = new long[WINDOW_MINUTES];
+    private final long[] bucketCounts = new long[WINDOW_MINUTES];
+    private long[] recent;
+    private int recentNext;
+
+    @Autowired
+    public PresenceTracker(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (int i = 0; i < STRIPES; i++) this.stripes[i] = new Stripe();
+    }
+
+    @PostConstruct
+    private void init() {
+        this.recent = new long[Math.max(this.recentSize, 1)];
+    }
+
+    public void touch(Long userId) {
+        if (userId == null) return;
+        long now = System.currentTimeMillis();
+        Stripe stripe = this.stripe(userId);
+        long previous;
+        synchronized (stripe) {
+            previous = stripe.seen.put(userId, now);
+            stripe.dirty.put(userId, now);
+        }
+        // the bucket structures only change once per user and minute
+        long minute = now / MINUTE;
+        if (previous > 0 && previous / MINUTE == minute) return;
+        synchronized (this.bucketCounts) {
+            if (previous > 0) {
+                int slot = (int) ((previous / MINUTE) % WINDOW_MINUTES);
+                if (this.bucketMinutes[slot] == previous / MINUTE && this.bucketCounts[slot] > 0)
+                    this.bucketCounts[slot]--;
+            }
+            int slot = (int) (minute % WINDOW_MINUTES);
+            if (this.bucketMinutes[slot] != minute) {
+                this.bucketMinutes[slot] = minute;
+                this.bucketCounts[slot] = 0;
+            }
+            this.bucketCounts[slot]++;
+            this.recent[this.recentNext] = userId;
+            this.recentNext = (this.recentNext + 1) % this.recent.length;
+        }
+    }
+
+    public Date getLastSeen(Long userId) {
+        if (userId == null) return null;
+        Stripe stripe = this.stripe(userId);
+        long lastSeen;
+        synchronized (stripe) {
+            lastSeen = stripe.seen.get(userId);
+        }
+        if (lastSeen == LongLongHashMap.NO_VALUE) {
+            lastSeen = this.load(userId);
+            synchronized (stripe) {
+                // a touch may have raced the load, keep the newer value
+                long current = stripe.seen.get(userId);
+                if (current == LongLongHashMap.NO_VALUE || current < lastSeen) stripe.seen.put(userId, lastSeen);
+                else lastSeen = current;
+            }
+        }
+        return lastSeen == NEVER ? null : new Date(lastSeen);
+    }
+
+    // users seen within the last minutes, at minute resolution and at most one hour back
+    public long countOnline(int minutes) {
+        minutes = Math.max(1, Math.min(minutes, WINDOW_MINUTES));
+        long current = System.currentTimeMillis() / MINUTE;
+        long count = 0;
+        synchronized (this.bucketCounts) {
+            for (long minute = current - minutes + 1; minute <= current; minute++) {
+                int slot = (int) (minute % WINDOW_MINUTES);
+                if (this.bucketMinutes[slot] == minute) count += this.bucketCounts[slot];
+            }
+        }
+        return count;
+    }
+
+    // most recently active users first, newest to oldest
+    public Map<Long, Date> findRecent(int limit) {
+        limit = Math.max(1, Math.min(limit, this.recent.length));
+        List<Long> ids = new ArrayList<>(limit);
+        synchronized (this.bucketCounts) {
+            Set<Long> distinct = new HashSet<>();
+            for (int i = 1; i <= this.recent.length && ids.size() < limit; i++) {
+                long id = this.recent[(this.recentNext - i + this.recent.length) % this.recent.length];
+                if (id == 0) break;
+                if (distinct.add(id)) ids.add(id);
+            }
+        }
+        Map<Long, Date> users = new LinkedHashMap<>();
+        for (Long id : ids) users.put(id, this.getLastSeen(id));
+        return users;
+    }
+
+    @Scheduled(fixedDelayString = "${presence.checkpointIntervalMs}")
+    @PreDestroy
+    public void checkpoint() {
+        List<Object[]> args = new ArrayList<>();
+        for (Stripe stripe : this.stripes) {
+            LongLongHashMap dirty;
+            synchronized (stripe) {
+                if (stripe.dirty.isEmpty()) continue;
+                dirty = stripe.dirty;
+                stripe.dirty = new LongLongHashMap(dirty.size());
+            }
+            dirty.forEach((id, lastSeen) -> args.add(new Object[]{new Timestamp(lastSeen), id, new Timestamp(lastSeen)}));
+        }
+        if (args.isEmpty()) return;
+        try {
+            this.jdbcTemplate.batchUpdate("UPDATE m_users SET last_seen = ? WHERE id = ? AND (last_seen IS NULL OR last_seen < ?)", args);
+        } catch (RuntimeException e) {
+            // the in memory values stay correct, the next touch of these users marks them dirty again
+            LOGGER.error("Could not write last seen of " + args.size() + " users", e);
+        }
+    }
+
+    // falls back to the activity log for users that have not been checkpointed yet
+    private long load(long userId) {
+        List<Timestamp> lastSeen = this.jdbcTemplate.queryForList("SELECT COALESCE(u.last_seen, " +
+                "(SELECT MAX(a.created) FROM activity_logs a WHERE a.user_id = u.id)) FROM m_users u WHERE u.id = ?", Timestamp.class, userId);
+        return lastSeen.isEmpty() || lastSeen.get(0) == null ? NEVER : lastSeen.get(0).getTime();
+    }
+
+    private Stripe stripe(long userId) {
+        return this.stripes[(int) (userId & (STRIPES - 1))];
+    }
+
+    private static final class Stripe {
+        private final LongLongHashMap seen = new LongLongHashMap(1024);
+        private LongLongHashMap dirty = new LongLongHashMap(256);
+    }
+}
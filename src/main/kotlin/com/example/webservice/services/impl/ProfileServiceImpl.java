@@ -5,6 +5,7 @@ import com.example.webservice.commons.utils.Validator;
 import com.example.webservice.config.security.SecurityConfig;
 import com.example.webservice.entities.Profile;
 import com.example.webservice.entities.User;
+import com.example.webservice.entities.pojo.ProfileSlice;
 import com.example.webservice.entities.pojo.UploadProperties;
 import com.example.webservice.exceptions.exists.UserAlreadyExistsException;
 import com.example.webservice.exceptions.forbidden.ForbiddenException;
@@ -18,6 +19,7 @@ import com.example.webservice.services.ProfileService;
 import com.example.webservice.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -42,7 +44,7 @@ public class ProfileServiceImpl implements ProfileService{
     public Profile save(Profile profile, String username) throws NotFoundException, UserAlreadyExistsException, NullPasswordException, UserInvalidException {
         if (profile == null || username == null)
             throw new IllegalArgumentException("Profile or username can not be null");
-        User user = this.userService.findByUsernameOrPhone(username);
+        User user = this.userService.findOneForUpdate(this.userService.findByUsernameOrPhone(username).getId());
         profile.setUser(user);
         Profile exProfile = this.profileRepository.findByUserUsername(username);
         if (exProfile != null) {
@@ -97,8 +99,13 @@ public class ProfileServiceImpl implements ProfileService{
     }
 
     @Override
-    public Page<Profile> getAllProfilePaginated(int pageNumber) {
-        return this.profileRepository.findAll(PageAttr.getPageRequest(pageNumber));
+    public Page<ProfileSlice> getAllProfilePaginated(int pageNumber) {
+        return this.profileRepository.findSlices(PageAttr.getPageRequest(pageNumber));
+    }
+
+    @Override
+    public Slice<ProfileSlice> getAllProfileAfter(Long afterId) {
+        return this.profileRepository.findSlicesByIdLessThan(afterId, PageAttr.getSliceRequest(PageAttr.PAGE_SIZE));
     }
 
     @Override
@@ -20,6 +20,7 @@ import com.example.webservice.services.NotificationService;
 import com.example.webservice.services.PromoService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -46,6 +47,11 @@ public class PromoServiceImpl implements PromoService {
         return this.promoRepo.findAll(PageAttr.getPageRequest(page));
     }
 
+    @Override
+    public Slice<Promo> findAllAfter(Long afterId) {
+        return this.promoRepo.findByIdLessThan(afterId, PageAttr.getSliceRequest(PageAttr.PAGE_SIZE));
+    }
+
     @Override
     public Promo save(Promo promo) throws InvalidException {
         if (promo == null) throw new IllegalArgumentException("Promo can not be empty!");
@@ -0,0 +1,81 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.commons.SlidingWindowCounter;
+import com.example.webservice.commons.utils.NetworkUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Flood control per action and client address over a sliding window. Counting is atomic, lookups that only check
+ * do not create entries, and each action has a fixed size table so memory is bounded however many addresses show up.
+ */
+@Service
+public class RateLimitService {
+    public enum Action {
+        LOGIN, REGISTRATION, OTP, PASSWORD_RESET
+    }
+
+    @Value("${rateLimit.capacity}")
+    private int capacity;
+    @Value("${rateLimit.login.limit}")
+    private int loginLimit;
+    @Value("${rateLimit.login.windowSeconds}")
+    private long loginWindowSeconds;
+    @Value("${rateLimit.registration.limit}")
+    private int registrationLimit;
+    @Value("${rateLimit.registration.windowSeconds}")
+    private long registrationWindowSeconds;
+    @Value("${rateLimit.otp.limit}")
+    private int otpLimit;
+    @Value("${rateLimit.otp.windowSeconds}")
+    private long otpWindowSeconds;
+    @Value("${rateLimit.passwordReset.limit}")
+    private int passwordResetLimit;
+    @Value("${rateLimit.passwordReset.windowSeconds}")
+    private long passwordResetWindowSeconds;
+
+    private final Map<Action, Limit> limits = new EnumMap<>(Action.class);
+
+    @PostConstruct
+    private void init() {
+        this.limits.put(Action.LOGIN, new Limit(this.loginLimit, this.loginWindowSeconds, this.capacity));
+        this.limits.put(Action.REGISTRATION, new Limit(this.registrationLimit, this.registrationWindowSeconds, this.capacity));
+        this.limits.put(Action.OTP, new Limit(this.otpLimit, this.otpWindowSeconds, this.capacity));
+        this.limits.put(Action.PASSWORD_RESET, new Limit(this.passwordResetLimit, this.passwordResetWindowSeconds, this.capacity));
+    }
+
+    // counts the attempt unless the limit is reached, false means it must be refused
+    public boolean tryAcquire(Action action, String ip) {
+        Limit limit = this.limits.get(action);
+        return limit.counter.tryAcquire(NetworkUtil.addressKey(ip), limit.max, System.currentTimeMillis());
+    }
+
+    // counts an attempt that already happened, such as a failed login
+    public void record(Action action, String ip) {
+        this.limits.get(action).counter.increment(NetworkUtil.addressKey(ip), System.currentTimeMillis());
+    }
+
+    public boolean isBlocked(Action action, String ip) {
+        Limit limit = this.limits.get(action);
+        return limit.counter.estimate(NetworkUtil.addressKey(ip), System.currentTimeMillis()) >= limit.max;
+    }
+
+    public void reset(Action action, String ip) {
+        this.limits.get(action).counter.reset(NetworkUtil.addressKey(ip));
+    }
+
+    private static final class Limit {
+        private final int max;
+        private final SlidingWindowCounter counter;
+
+        private Limit(int max, long windowSeconds, int capacity) {
+            this.max = max;
+            this.counter = new SlidingWindowCounter(capacity, TimeUnit.SECONDS.toMillis(windowSeconds));
+        }
+    }
+}
@@ -1,44 +1,23 @@
 package com.example.webservice.services.impl;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-
 @Service
 public class RegistrationAttemptService {
-    private final int MAX_ATTEMPT = 1;
-    private LoadingCache<String, Integer> attemptsCache;
+    private final RateLimitService rateLimitService;
 
-    public RegistrationAttemptService() {
-        super();
-        attemptsCache = CacheBuilder.newBuilder().
-                expireAfterWrite(1, TimeUnit.MINUTES).build(new CacheLoader<String, Integer>() {
-            public Integer load(String key) {
-                return 0;
-            }
-        });
+    @Autowired
+    public RegistrationAttemptService(RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
     }
 
-    public void registrationSuccess(String key) {
-        int attempts;
-        try {
-            attempts = attemptsCache.get(key);
-        } catch (ExecutionException e) {
-            attempts = 0;
-        }
-        attempts++;
-        attemptsCache.put(key, attempts);
+    // checks and counts in one step, false means the limit is reached
+    public boolean tryRegister(String key) {
+        return this.rateLimitService.tryAcquire(RateLimitService.Action.REGISTRATION, key);
     }
 
     public boolean isBlocked(String key) {
-        try {
-            return attemptsCache.get(key) >= MAX_ATTEMPT;
-        } catch (ExecutionException e) {
-            return false;
-        }
+        return this.rateLimitService.isBlocked(RateLimitService.Action.REGISTRATION, key);
     }
-}
\ No newline at end of file
+}
@@ -10,6 +10,8 @@ import com.example.webservice.services.RoleService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -17,38 +19,64 @@ public class RoleServiceImpl implements RoleService {
     private UserRepository userRepo;
     private final RoleRepository roleRepo;
 
+    // one role per ERole, indexed by ordinal; loaded at startup and replaced as a whole on change
+    private volatile Role[] catalog;
+
     @Autowired
     public RoleServiceImpl(UserRepository userRepo, RoleRepository roleRepo) {
         this.userRepo = userRepo;
         this.roleRepo = roleRepo;
     }
 
+    @PostConstruct
+    private void loadCatalog() {
+        Role[] catalog = new Role[Role.ERole.values().length];
+        for (Role.ERole eRole : Role.ERole.values()) {
+            Role role = this.roleRepo.findByRole(eRole.toString());
+            if (role == null) role = this.roleRepo.save(new Role(eRole));
+            catalog[eRole.ordinal()] = role;
+        }
+        this.catalog = catalog;
+    }
+
     @Override
     public Role findRole(Role.ERole eRole) {
-        Role role = this.findByRole(eRole.toString());
-        if (role==null) {
-            role = new Role(eRole);
-            role = this.save(role);
-        }
-        return role;
+        return this.catalog[eRole.ordinal()];
     }
 
     @Override
     public Role findByRole(String role) {
         if (role==null) throw new IllegalArgumentException("Role can not be null!");
-        return this.roleRepo.findByRole(role);
+        Role.ERole eRole = Role.findERole(role);
+        return eRole == null ? this.roleRepo.findByRole(role) : this.findRole(eRole);
     }
 
     @Override
-    public Role save(Role role) {
+    public synchronized Role save(Role role) {
         if (role==null) throw new IllegalArgumentException("Role can not be null!");
-        return this.roleRepo.save(role);
+        role = this.roleRepo.save(role);
+        Role.ERole eRole = Role.findERole(role.getRole());
+        if (eRole != null && role.getId().equals(this.catalog[eRole.ordinal()].getId())) {
+            Role[] catalog = this.catalog.clone();
+            catalog[eRole.ordinal()] = role;
+            this.catalog = catalog;
+        }
+        return role;
     }
 
     @Override
     public List<Role> findByUser(Long userId) throws ForbiddenException, UserNotFoundException {
-        User user = this.userRepo.findById(userId).orElse(null);
-        if (user == null) throw new UserNotFoundException("Could not find user with id " + userId);
-        return user.getRoles();
+        Integer roleMask = this.userRepo.findRoleMaskById(userId);
+        if (roleMask == null) throw new UserNotFoundException("Could not find user with id " + userId);
+        if (roleMask == 0) {
+            // not backfilled yet
+            User user = this.userRepo.findById(userId).orElse(null);
+            if (user == null) throw new UserNotFoundException("Could not find user with id " + userId);
+            return user.getRoles();
+        }
+        List<Role> roles = new ArrayList<>();
+        for (Role.ERole eRole : Role.ERole.values())
+            if ((roleMask & Role.maskOf(eRole)) != 0) roles.add(this.findRole(eRole));
+        return roles;
     }
 }
@@ -1,7 +1,10 @@
 package com.example.webservice.services.impl;
 
 import com.example.webservice.commons.utils.NetworkUtil;
+import com.example.webservice.commons.utils.PhoneUtil;
 import com.example.webservice.services.SmsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Service;
@@ -11,6 +14,7 @@ import java.io.IOException;
 @Service
 @PropertySource("classpath:sms.properties")
 public class SmsServiceImpl implements SmsService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SmsServiceImpl.class);
 
     @Value("${mimsms.apiKey}")
     String apiKey;
@@ -19,14 +23,19 @@ public class SmsServiceImpl implements SmsService {
 
     @Override
     public boolean sendSms(String phoneNumber, String message) {
-        String phone = phoneNumber.startsWith("88") ? phoneNumber : "88" + phoneNumber;
+        String normalized = PhoneUtil.normalize(phoneNumber);
+        if (normalized == null) {
+            LOGGER.warn("Could not send SMS, invalid phone number: {}", phoneNumber);
+            return false;
+        }
+        String phone = "88" + normalized;
         String url = "http://brandsms.mimsms.com/smsapi?api_key=" + this.apiKey + "&type=text&contacts=" + phone +
                 "&senderid=" + this.senderId + "&msg=" + message;
         try {
             NetworkUtil.postData(url, null, null);
             return true;
         } catch (IOException e) {
-            System.out.println("Could not send SMS. " + e.getMessage());
+            LOGGER.error("Could not send SMS to " + phone, e);
             return false;
         }
     }
@@ -0,0 +1,79 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.entities.pojo.UserAgentInfo;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Service
+public class UserAgentClassifier {
+    private static final Pattern DETAILS = Pattern.compile("\\(([^)]+)\\)");
+    private static final Pattern PRODUCT = Pattern.compile("^([A-Za-z][\\w.\\-]*)/([\\w.\\-]+)");
+    private static final Pattern BOT = Pattern.compile("bot|crawl|spider|slurp|facebookexternalhit|curl|wget|python-requests|headless", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ANDROID = Pattern.compile("Android\\s*([\\d.]*)");
+    private static final Pattern IOS = Pattern.compile("(?:iPhone|CPU) OS ([\\d_]+)|iOS\\s*([\\d.]+)");
+    private static final Pattern WINDOWS = Pattern.compile("Windows NT ([\\d.]+)");
+    private static final Pattern MAC = Pattern.compile("Mac OS X ([\\d_.]+)");
+
+    private final Cache<String, UserAgentInfo> cache;
+
+    @Autowired
+    public UserAgentClassifier(@Value("${activity.userAgent.cacheSize}") int cacheSize) {
+        // size bounded cache, evicts the least recently used entries first
+        this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public UserAgentInfo classify(String userAgent) {
+        if (userAgent == null || userAgent.isEmpty()) return UserAgentInfo.UNKNOWN;
+        try {
+            return this.cache.get(userAgent, () -> parse(userAgent));
+        } catch (ExecutionException e) {
+            return UserAgentInfo.UNKNOWN;
+        }
+    }
+
+    static UserAgentInfo parse(String userAgent) {
+        Matcher m = DETAILS.matcher(userAgent);
+        String details = m.find() ? m.group(1) : null;
+        boolean bot = BOT.matcher(userAgent).find();
+
+        String os = null;
+        UserAgentInfo.Platform platform = UserAgentInfo.Platform.OTHER;
+        if ((m = ANDROID.matcher(userAgent)).find()) {
+            os = join("Android", m.group(1));
+            platform = UserAgentInfo.Platform.ANDROID;
+        } else if ((m = IOS.matcher(userAgent)).find()) {
+            os = join("iOS", (m.group(1) != null ? m.group(1) : m.group(2)).replace('_', '.'));
+            platform = UserAgentInfo.Platform.IOS;
+        } else if ((m = WINDOWS.matcher(userAgent)).find()) {
+            os = join("Windows NT", m.group(1));
+        } else if ((m = MAC.matcher(userAgent)).find()) {
+            os = join("Mac OS X", m.group(1).replace('_', '.'));
+        } else if (userAgent.contains("Linux")) {
+            os = "Linux";
+        }
+
+        // our mobile apps send "AppName/1.2.3 (...)", browsers and http libraries are not app versions
+        String appVersion = null;
+        m = PRODUCT.matcher(userAgent);
+        if (m.find()) {
+            String product = m.group(1).toLowerCase();
+            if (product.equals("mozilla"))
+                platform = platform == UserAgentInfo.Platform.OTHER ? UserAgentInfo.Platform.WEB : platform;
+            else if (!product.equals("dalvik") && !product.equals("okhttp") && !product.equals("cfnetwork"))
+                appVersion = m.group(2);
+        }
+        if (bot) platform = UserAgentInfo.Platform.BOT;
+        return new UserAgentInfo(details, platform, os, appVersion, bot);
+    }
+
+    private static String join(String name, String version) {
+        return version == null || version.isEmpty() ? name : name + " " + version;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.commons.utils.PhoneUtil;
+import com.example.webservice.commons.utils.SchemaUtil;
+import com.example.webservice.entities.Role;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Upkeep of m_users that hibernate's schema update does not cover: the engine, the full text index and derived
+// columns of rows written before the column existed, filled in plain jdbc so last_updated stays untouched.
+@Service
+public class UserBackfillService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserBackfillService.class);
+    private static final int BATCH_SIZE = 1000;
+    private static final String SEARCH_INDEX = "ft_users_search";
+    // search terms that are numbers are normalized, so phone numbers are indexed the same way
+    private static final String SEARCH_COLUMNS = "name,username,phone_normalized";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public UserBackfillService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            this.createSearchIndex();
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not create full text index " + SEARCH_INDEX, e);
+        }
+        try {
+            this.normalizePhoneNumbers();
+            this.computeRoleMasks();
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not backfill m_users", e);
+        }
+    }
+
+    // the search settings (innodb_ft_min_token_size, the InnoDB stopword list) describe InnoDB full text indexes,
+    // schema update creates m_users as MyISAM under MySQL5Dialect, where ft_min_word_len would apply instead
+    private void createSearchIndex() {
+        SchemaUtil.convertToInnoDB(this.jdbcTemplate, "m_users");
+        List<String> columns = this.jdbcTemplate.queryForList("SELECT COLUMN_NAME FROM information_schema.STATISTICS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'm_users' AND INDEX_NAME = ? ORDER BY SEQ_IN_INDEX", String.class, SEARCH_INDEX);
+        if (String.join(",", columns).equalsIgnoreCase(SEARCH_COLUMNS)) return;
+        // an index from an earlier version covers other columns, match_against only works with the exact set
+        if (!columns.isEmpty()) {
+            LOGGER.info("Dropping full text index {} on {}", SEARCH_INDEX, columns);
+            this.jdbcTemplate.execute("ALTER TABLE m_users DROP INDEX " + SEARCH_INDEX);
+        }
+        LOGGER.info("Creating full text index {} on m_users", SEARCH_INDEX);
+        this.jdbcTemplate.execute("ALTER TABLE m_users ADD FULLTEXT INDEX " + SEARCH_INDEX + " (" + SEARCH_COLUMNS + ")");
+    }
+
+    private void computeRoleMasks() {
+        StringBuilder bit = new StringBuilder("CASE r.role");
+        for (Role.ERole eRole : Role.ERole.values())
+            bit.append(" WHEN '").append(eRole).append("' THEN ").append(Role.maskOf(eRole));
+        bit.append(" ELSE 0 END");
+        int updated = this.jdbcTemplate.update("UPDATE m_users u SET u.role_mask = (SELECT COALESCE(BIT_OR(" + bit + "), 0) " +
+                "FROM m_users_roles ur JOIN roles r ON r.id = ur.roles_id WHERE ur.user_id = u.id) " +
+                "WHERE u.role_mask = 0 AND EXISTS (SELECT 1 FROM m_users_roles ur WHERE ur.user_id = u.id)");
+        if (updated > 0) LOGGER.info("Computed role masks of {} users", updated);
+    }
+
+    private void normalizePhoneNumbers() {
+        long lastId = 0;
+        int updated = 0;
+        while (true) {
+            List<Map<String, Object>> rows = this.jdbcTemplate.queryForList("SELECT id, phone_number FROM m_users " +
+                    "WHERE phone_normalized IS NULL AND phone_number IS NOT NULL AND id > ? ORDER BY id LIMIT ?", lastId, BATCH_SIZE);
+            if (rows.isEmpty()) break;
+            List<Object[]> args = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                lastId = ((Number) row.get("id")).longValue();
+                String normalized = PhoneUtil.normalize((String) row.get("phone_number"));
+                if (normalized != null) args.add(new Object[]{normalized, lastId});
+            }
+            this.jdbcTemplate.batchUpdate("UPDATE m_users SET phone_normalized = ? WHERE id = ?", args);
+            updated += args.size();
+        }
+        if (updated > 0) LOGGER.info("Normalized phone numbers of {} users", updated);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.commons.utils.PhoneUtil;
+import com.example.webservice.entities.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Bounded, expiring cache of users for authentication and lookups, indexed by id, username and phone number.
+ * Users are held once by id, the username and phone indexes only point at ids and are checked against the
+ * cached user so a stale index entry is a miss. Every write through UserService invalidates the user, inside a
+ * transaction once more after commit, as a concurrent read may have cached the old row in between. Cached users are
+ * shared and must not be modified, writes start from UserService.findOneForUpdate.
+ */
+@Service
+public class UserCache {
+    private final Cache<Long, User> users;
+    private final Cache<String, Long> idsByUsername;
+    private final Cache<String, Long> idsByPhone;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public UserCache(@Value("${user.cache.maxSize}") int maxSize, @Value("${user.cache.ttlSeconds}") long ttlSeconds) {
+        this.users = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).recordStats().build();
+        this.idsByUsername = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+        this.idsByPhone = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).build();
+    }
+
+    public User findById(Long id, Supplier<User> loader) {
+        User user = this.users.getIfPresent(id);
+        return this.hitOrLoad(user, loader);
+    }
+
+    public User findByUsername(String username, Supplier<User> loader) {
+        return this.hitOrLoad(this.getByUsername(username), loader);
+    }
+
+    public User findByPhone(String phone, Supplier<User> loader) {
+        return this.hitOrLoad(this.getByPhone(phone), loader);
+    }
+
+    // a login name may be either, both indexes are checked before anything is loaded
+    public User findByUsernameOrPhone(String usernameOrPhone, Supplier<User> loader) {
+        User user = this.getByUsername(usernameOrPhone);
+        if (user == null) user = this.getByPhone(usernameOrPhone);
+        return this.hitOrLoad(user, loader);
+    }
+
+    public void invalidate(User user) {
+        if (user == null) return;
+        this.evict(user);
+        afterCommit(() -> this.evict(user));
+    }
+
+    public void invalidate(Collection<Long> ids) {
+        this.evict(ids);
+        afterCommit(() -> this.evict(ids));
+    }
+
+    private void evict(User user) {
+        if (user.getId() != null) {
+            User cached = this.users.getIfPresent(user.getId());
+            if (cached != null) this.invalidateIndexes(cached);
+            this.users.invalidate(user.getId());
+        }
+        this.invalidateIndexes(user);
+    }
+
+    private void evict(Collection<Long> ids) {
+        for (Long id : ids) {
+            User cached = this.users.getIfPresent(id);
+            if (cached != null) this.invalidateIndexes(cached);
+            this.users.invalidate(id);
+        }
+    }
+
+    private static void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        this.users.invalidateAll();
+        this.idsByUsername.invalidateAll();
+        this.idsByPhone.invalidateAll();
+    }
+
+    public Map<String, Object> getStats() {
+        long hits = this.hits.sum();
+        long misses = this.misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", this.users.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        stats.put("evictions", this.users.stats().evictionCount());
+        return stats;
+    }
+
+    private User getByUsername(String username) {
+        if (username == null) return null;
+        Long id = this.idsByUsername.getIfPresent(username);
+        User user = id == null ? null : this.users.getIfPresent(id);
+        return user != null && username.equals(user.getUsername()) ? user : null;
+    }
+
+    private User getByPhone(String phone) {
+        if (phone == null) return null;
+        String normalized = PhoneUtil.normalize(phone);
+        if (normalized == null) return null;
+        Long id = this.idsByPhone.getIfPresent(normalized);
+        User user = id == null ? null : this.users.getIfPresent(id);
+        return user != null && normalized.equals(user.getPhoneNormalized()) ? user : null;
+    }
+
+    // misses are not cached, a user registered a moment later must be found
+    private User hitOrLoad(User cached, Supplier<User> loader) {
+        if (cached != null) {
+            this.hits.increment();
+            return cached;
+        }
+        this.misses.increment();
+        User user = loader.get();
+        if (user != null && user.getId() != null) {
+            this.users.put(user.getId(), user);
+            if (user.getUsername() != null) this.idsByUsername.put(user.getUsername(), user.getId());
+            if (user.getPhoneNormalized() != null) this.idsByPhone.put(user.getPhoneNormalized(), user.getId());
+        }
+        return user;
+    }
+
+    private void invalidateIndexes(User user) {
+        if (user.getUsername() != null) this.idsByUsername.invalidate(user.getUsername());
+        if (user.getPhoneNormalized() != null) this.idsByPhone.invalidate(user.getPhoneNormalized());
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.commons.utils.PhoneUtil;
+import com.example.webservice.entities.Role;
+import com.example.webservice.entities.User;
+import com.example.webservice.entities.pojo.ImportResult;
+import com.example.webservice.repositories.UserRepository;
+import com.example.webservice.services.ActivityRollupService;
+import com.example.webservice.services.ExportService;
+import com.example.webservice.services.RoleService;
+import com.example.webservice.services.UserImportService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Bulk account creation for onboarding. Rows are read as a stream and handled in chunks of user.import.batchSize:
+ * every row is validated, a chunk is checked against the existing usernames, phones and emails with one query,
+ * passwords are hashed in parallel and the users are saved with saveAll, which hibernate sends as jdbc batches.
+ * Registration side effects (OTP, flood control) do not apply, a row that fails is reported and skipped.
+ */
+@Service
+public class UserImportServiceImpl implements UserImportService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserImportServiceImpl.class);
+
+    private final UserRepository userRepo;
+    private final RoleService roleService;
+    private final PasswordHashingService passwordHashingService;
+    private final ActivityRollupService activityRollupService;
+    private final UserSuggestIndex userSuggestIndex;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${user.import.batchSize}")
+    private int batchSize;
+    @Value("${user.import.hashingThreads}")
+    private int hashingThreads;
+    @Value("${user.import.maxReportedErrors}")
+    private int maxReportedErrors;
+
+    private ForkJoinPool hashingPool;
+
+    @Autowired
+    public UserImportServiceImpl(UserRepository userRepo, RoleService roleService, PasswordHashingService passwordHashingService, ActivityRollupService activityRollupService, UserSuggestIndex userSuggestIndex, NamedParameterJdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.userRepo = userRepo;
+        this.roleService = roleService;
+        this.passwordHashingService = passwordHashingService;
+        this.activityRollupService = activityRollupService;
+        this.userSuggestIndex = userSuggestIndex;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    private void start() {
+        if (this.batchSize <= 0) this.batchSize = 1;
+        if (this.hashingThreads <= 0) this.hashingThreads = Runtime.getRuntime().availableProcessors();
+        // kept apart from the login pool so an import never queues in front of logins
+        this.hashingPool = new ForkJoinPool(this.hashingThreads);
+    }
+
+    @PreDestroy
+    private void stop() {
+        this.hashingPool.shutdownNow();
+    }
+
+    // one import at a time, the hashing pool is sized for a single import
+    @Override
+    public synchronized ImportResult importUsers(InputStream in, ExportService.Format format) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportResult result = new ImportResult();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        RowReader rows = format == ExportService.Format.CSV ? new CsvRowReader(reader) : new JsonRowReader(reader, this.objectMapper);
+
+        // duplicates inside the file, the database is checked per chunk
+        Set<String> seen = new HashSet<>();
+        List<ImportRow> chunk = new ArrayList<>(this.batchSize);
+        ImportRow row;
+        while ((row = rows.next()) != null) {
+            result.incrementTotal();
+            String error = row.error != null ? row.error : validate(row);
+            if (error == null) {
+                String duplicate = duplicateOf(row, seen);
+                if (duplicate != null) error = duplicate + " is duplicated in this file";
+            }
+            if (error != null) {
+                this.reject(result, row, error);
+                continue;
+            }
+            chunk.add(row);
+            if (chunk.size() >= this.batchSize) {
+                this.importChunk(chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) this.importChunk(chunk, result);
+        LOGGER.info("Imported {} of {} users in {} ms", result.getImported(), result.getTotal(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private void importChunk(List<ImportRow> chunk, ImportResult result) {
+        Set<String> existing = this.findExisting(chunk);
+        List<ImportRow> rows = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            String duplicate = duplicateOf(row, existing);
+            if (duplicate != null) this.reject(result, row, duplicate + " is already registered");
+            else rows.add(row);
+        }
+        if (rows.isEmpty()) return;
+
+        Role userRole = this.roleService.findRole(Role.ERole.ROLE_USER);
+        try {
+            this.hashingPool.submit(() -> rows.parallelStream().forEach(row -> {
+                row.user = row.toUser();
+                row.user.setPassword(this.passwordHashingService.encodeOnCallingThread(row.password));
+                // catalog lookups only, grantRole keeps admin out
+                row.user.grantRole(userRole);
+                row.user.grantRole(this.roleService.findRole(Role.getERoleFromRoleName(row.userType)));
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing imported passwords", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not hash imported passwords", e.getCause());
+        }
+
+        List<User> saved = this.save(rows, result);
+        for (User user : saved) {
+            this.userSuggestIndex.update(user);
+            this.activityRollupService.recordRegistration(user.getCreated());
+        }
+        result.addImported(saved.size());
+    }
+
+    private List<User> save(List<ImportRow> rows, ImportResult result) {
+        List<User> users = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) users.add(row.user);
+        try {
+            return this.userRepo.saveAll(users);
+        } catch (DataAccessException e) {
+            LOGGER.warn("Batch of {} imported users failed, retrying row by row: {}", rows.size(), e.getMessage());
+        }
+        // someone registered in between. Normalized phone numbers have no unique constraint, so the rows that are
+        // taken now are found with the same query as before instead of relying on the insert to fail
+        Set<String> existing = this.findExisting(rows);
+        List<User> saved = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            String duplicate = duplicateOf(row, existing);
+            if (duplicate != null) {
+                this.reject(result, row, duplicate + " is already registered");
+                continue;
+            }
+            row.user.setId(null);
+            try {
+                saved.add(this.userRepo.save(row.user));
+            } catch (DataAccessException e) {
+                this.reject(result, row, "Could not be saved: " + e.getMostSpecificCause().getMessage());
+            }
+        }
+        return saved;
+    }
+
+    // lower cased usernames, normalized phones and emails of this chunk that are already taken
+    private Set<String> findExisting(List<ImportRow> rows) {
+        Set<String> usernames = new HashSet<>(), phones = new HashSet<>(), emails = new HashSet<>();
+        for (ImportRow row : rows) {
+            usernames.add(row.username);
+            phones.add(row.phoneNormalized);
+            if (row.email != null) emails.add(row.email);
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("usernames", usernames)
+                .addValue("phones", phones);
+        String sql = "SELECT username, phone_normalized, email FROM m_users WHERE username IN (:usernames) OR phone_normalized IN (:phones)";
+        if (!emails.isEmpty()) {
+            sql += " OR email IN (:emails)";
+            params.addValue("emails", emails);
+        }
+        Set<String> existing = new HashSet<>();
+        this.jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> {
+            addKey(existing, "u", rs.getString(1));
+            addKey(existing, "p", rs.getString(2));
+            addKey(existing, "e", rs.getString(3));
+        });
+        return existing;
+    }
+
+    private void reject(ImportResult result, ImportRow row, String message) {
+        result.addError(new ImportResult.RowError(row.line, row.username != null ? row.username : row.phone, message), this.maxReportedErrors);
+    }
+
+    private static String validate(ImportRow row) {
+        if (row.name == null) return "Name can not be empty!";
+        if (row.phone == null || row.phone.length() < 11 || row.phoneNormalized == null || row.phoneNormalized.length() < 11)
+            return "Phone number invalid!";
+        if (row.password == null || row.password.length() < 6 || row.password.length() > 100)
+            return "Password must be between 6 to 100 characters!";
+        if (row.email != null && !row.email.matches("[^@\\s]+@[^@\\s]+"))
+            return "Email invalid!";
+        return null;
+    }
+
+    // the field that is already in `keys`, otherwise adds the row's keys and returns null
+    private static String duplicateOf(ImportRow row, Set<String> keys) {
+        String username = "u" + row.username.toLowerCase(Locale.ROOT);
+        String phone = "p" + row.phoneNormalized;
+        String email = row.email == null ? null : "e" + row.email.toLowerCase(Locale.ROOT);
+        if (keys.contains(username)) return "Username";
+        if (keys.contains(phone)) return "Phone number";
+        if (email != null && keys.contains(email)) return "Email";
+        keys.add(username);
+        keys.add(phone);
+        if (email != null) keys.add(email);
+        return null;
+    }
+
+    private static void addKey(Set<String> keys, String type, String value) {
+        if (value != null) keys.add(type + value.toLowerCase(Locale.ROOT));
+    }
+
+    private static String clean(String value) {
+        if (value == null) return null;
+        value = value.trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static final class ImportRow {
+        private final long line;
+        private String name;
+        private String username;
+        private String email;
+        private String phone;
+        private String phoneNormalized;
+        private String password;
+        private String userType;
+        private String error;
+        private User user;
+
+        private ImportRow(long line) {
+            this.line = line;
+        }
+
+        private ImportRow set(String field, String value) {
+            value = clean(value);
+            switch (field.replace("_", "").toLowerCase(Locale.ROOT)) {
+                case "name": this.name = value; break;
+                case "username": this.username = value; break;
+                case "email": this.email = value; break;
+                case "phone":
+                case "phonenumber": this.phone = value; break;
+                case "password": this.password = value; break;
+                case "usertype":
+                case "type": this.userType = value; break;
+                default: break;
+            }
+            return this;
+        }
+
+        private ImportRow normalize() {
+            this.phoneNormalized = PhoneUtil.normalize(this.phone);
+            if (this.username == null) this.username = this.phone;
+            return this;
+        }
+
+        private User toUser() {
+            User user = new User();
+            user.setName(this.name);
+            user.setUsername(this.username);
+            user.setEmail(this.email);
+            user.setPhoneNumber(this.phone);
+            user.setUserType(this.userType);
+            return user;
+        }
+    }
+
+    private interface RowReader {
+        ImportRow next() throws IOException;
+    }
+
+    private static final class JsonRowReader implements RowReader {
+        private final BufferedReader reader;
+        private final ObjectMapper objectMapper;
+        private long line;
+
+        private JsonRowReader(BufferedReader reader, ObjectMapper objectMapper) {
+            this.reader = reader;
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public ImportRow next() throws IOException {
+            String text;
+            do {
+                text = this.reader.readLine();
+                if (text == null) return null;
+                this.line++;
+            } while (text.trim().isEmpty());
+            ImportRow row = new ImportRow(this.line);
+            try {
+                JsonNode node = this.objectMapper.readTree(text);
+                if (node == null || !node.isObject()) throw new IOException("not an object");
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    row.set(field.getKey(), field.getValue().isNull() ? null : field.getValue().asText());
+                }
+            } catch (IOException e) {
+                row.error = "Line is not a json object";
+            }
+            return row.normalize();
+        }
+    }
+
+    // first line is the header, fields may be quoted with "" as an escaped quote, no line breaks inside fields
+    private static final class CsvRowReader implements RowReader {
+        private final BufferedReader reader;
+        private List<String> header;
+        private long line;
+
+        private CsvRowReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public ImportRow next() throws IOException {
+            String text;
+            do {
+                text = this.reader.readLine();
+                if (text == null) return null;
+                this.line++;
+                if (this.header == null && !text.trim().isEmpty()) {
+                    List<String> header = parse(text);
+                    this.header = header == null ? Collections.emptyList() : header;
+                    text = "";
+                }
+            } while (text.trim().isEmpty());
+            ImportRow row = new ImportRow(this.line);
+            List<String> values = parse(text);
+            if (values == null) {
+                row.error = "Unterminated quote";
+                return row.normalize();
+            }
+            for (int i = 0; i < this.header.size() && i < values.size(); i++)
+                row.set(this.header.get(i), values.get(i));
+            return row.normalize();
+        }
+
+        private static List<String> parse(String text) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c != '"') value.append(c);
+                    else if (i + 1 < text.length() && text.charAt(i + 1) == '"') value.append(text.charAt(++i));
+                    else quoted = false;
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            if (quoted) return null;
+            values.add(value.toString());
+            return values;
+        }
+    }
+}
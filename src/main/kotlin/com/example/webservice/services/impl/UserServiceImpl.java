@@ -3,11 +3,15 @@ package com.example.webservice.services.impl;
 import com.example.webservice.commons.PageAttr;
 import com.example.webservice.commons.utils.NetworkUtil;
 import com.example.webservice.commons.utils.PasswordUtil;
+import com.example.webservice.commons.utils.PhoneUtil;
 import com.example.webservice.commons.utils.SessionIdentifierGenerator;
 import com.example.webservice.config.security.SecurityConfig;
+import com.example.webservice.config.security.TokenService;
 import com.example.webservice.entities.AcValidationToken;
 import com.example.webservice.entities.Role;
 import com.example.webservice.entities.User;
+import com.example.webservice.entities.pojo.UserSlice;
+import com.example.webservice.entities.pojo.UserSuggestion;
 import com.example.webservice.exceptions.exists.UserAlreadyExistsException;
 import com.example.webservice.exceptions.forbidden.ForbiddenException;
 import com.example.webservice.exceptions.invalid.InvalidException;
@@ -19,12 +23,18 @@ import com.example.webservice.repositories.UserRepository;
 import com.example.webservice.services.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.transaction.Transactional;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
 
 @Service
 public class UserServiceImpl implements UserService {
@@ -33,7 +43,13 @@ public class UserServiceImpl implements UserService {
     private final MailService mailService;
     private final RoleService roleService;
     private final RegistrationAttemptService registrationAttemptService;
+    private final RateLimitService rateLimitService;
     private final SmsService smsService;
+    private final ActivityRollupService activityRollupService;
+    private final UserCache userCache;
+    private final UserSuggestIndex userSuggestIndex;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TokenService tokenService;
 
     @Value("${applicationName}")
     private String applicationName;
@@ -43,27 +59,40 @@ public class UserServiceImpl implements UserService {
     private String adminPhone1;
     @Value(("${admin.phone2}"))
     private String adminPhone2;
+    @Value("${user.search.minTokenSize}")
+    private int searchMinTokenSize;
+    @Value("${user.bulk.maxIds}")
+    private int bulkMaxIds;
 
     @Autowired
-    public UserServiceImpl(UserRepository userRepo, AcValidationTokenService acValidationTokenService, MailService mailService, RoleService roleService, RegistrationAttemptService registrationAttemptService, SmsService smsService) {
+    public UserServiceImpl(UserRepository userRepo, AcValidationTokenService acValidationTokenService, MailService mailService, RoleService roleService, RegistrationAttemptService registrationAttemptService, RateLimitService rateLimitService, SmsService smsService, ActivityRollupService activityRollupService, UserCache userCache, UserSuggestIndex userSuggestIndex, NamedParameterJdbcTemplate jdbcTemplate, @Lazy TokenService tokenService) {
         this.userRepo = userRepo;
         this.acValidationTokenService = acValidationTokenService;
         this.mailService = mailService;
         this.roleService = roleService;
         this.registrationAttemptService = registrationAttemptService;
+        this.rateLimitService = rateLimitService;
         this.smsService = smsService;
+        this.activityRollupService = activityRollupService;
+        this.userCache = userCache;
+        this.userSuggestIndex = userSuggestIndex;
+        this.jdbcTemplate = jdbcTemplate;
+        // lazy: the token services are built by the authorization server config, which depends on users
+        this.tokenService = tokenService;
     }
 
     @Override
     public User findByUsername(String username) throws UserNotFoundException {
         if (username == null) throw new UserNotFoundException("Username can not be null!");
-        return this.userRepo.findByUsername(username);
+        return this.userCache.findByUsername(username, () -> this.userRepo.findByUsername(username));
     }
 
     @Override
     public User findByPhoneNumber(String phoneNumber) throws InvalidException {
         if (phoneNumber == null) throw new InvalidException("Phone number can not be null!");
-        return this.userRepo.findByPhoneNumber(phoneNumber);
+        String normalized = PhoneUtil.normalize(phoneNumber);
+        if (normalized == null) throw new InvalidException("Phone number invalid!");
+        return this.userCache.findByPhone(phoneNumber, () -> this.userRepo.findFirstByPhoneNormalized(normalized));
     }
 
     @Override
@@ -74,37 +103,91 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public User findByUsernameOrPhone(String usernameOrPhone) throws UserNotFoundException {
-        User user = this.userRepo.findByUsername(usernameOrPhone);
-        if (user == null)
-            user = this.userRepo.findByPhoneNumber(usernameOrPhone);
+        User user = this.userCache.findByUsernameOrPhone(usernameOrPhone, () -> {
+            List<User> users = this.userRepo.findByUsernameOrPhoneNormalized(usernameOrPhone, PhoneUtil.normalize(usernameOrPhone));
+            // a username match wins over another user's phone number
+            for (User u : users)
+                if (usernameOrPhone.equals(u.getUsername())) return u;
+            return users.isEmpty() ? null : users.get(0);
+        });
         if (user == null)
             throw new UserNotFoundException("Could not find user with username or email " + usernameOrPhone);
         return user;
     }
 
     @Override
-    public Page<User> searchUser(String query, int page, int size) {
-        return this.userRepo.searchByNameOrUsername(query, PageAttr.getPageRequest(page, size));
+    public Page<UserSlice> searchUser(String query, int page, int size) {
+        String booleanQuery = this.toFullTextQuery(query);
+        if (booleanQuery != null)
+            return this.userRepo.searchSlices(booleanQuery, PageAttr.getPageRequest(page, size));
+        // too short for the full text index, an indexed prefix match keeps it bounded
+        String prefix = query == null ? "" : query.trim();
+        String phonePrefix = PhoneUtil.normalizePrefix(prefix);
+        if (phonePrefix != null) prefix = phonePrefix;
+        if (prefix.isEmpty()) return Page.empty(PageAttr.getPageRequest(page, size));
+        return this.userRepo.searchSlicesByPrefix(prefix.replace("%", "").replace("_", ""), PageAttr.getPageRequest(page, size));
+    }
+
+    @Override
+    public List<UserSuggestion> suggest(String prefix, int limit) {
+        return this.userSuggestIndex.suggest(prefix, Math.max(1, Math.min(limit, 50)));
+    }
+
+    // every word is required and matched as a prefix: "rah kha" becomes "+rah* +kha*"
+    private String toFullTextQuery(String query) {
+        if (query == null) return null;
+        StringBuilder booleanQuery = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            term = term.replaceAll("[+\\-<>()~*\"@]", "");
+            if (term.matches("\\d+")) term = PhoneUtil.normalize(term);
+            if (term == null || term.length() < this.searchMinTokenSize) continue;
+            if (booleanQuery.length() > 0) booleanQuery.append(' ');
+            booleanQuery.append('+').append(term).append('*');
+        }
+        return booleanQuery.length() == 0 ? null : booleanQuery.toString();
     }
 
     @Override
-    public Page<User> findAll(int page) {
+    public Page<UserSlice> findAll(int page) {
         if (page < 0) page = 0;
-        return this.userRepo.findAll(PageAttr.getPageRequest(page));
+        return this.userRepo.findSlices(PageAttr.getPageRequest(page));
+    }
+
+    @Override
+    public Page<UserSlice> findByRole(String role, int page) {
+        Role.ERole eRole = Role.findERoleByName(role);
+        if (eRole == null) return Page.empty(PageAttr.getPageRequest(page));
+        return this.userRepo.findSlicesByRoleMaskIn(Role.masksWith(eRole), PageAttr.getPageRequest(page));
+    }
+
+    @Override
+    public Slice<UserSlice> findAllAfter(Long afterId) {
+        return this.userRepo.findSlicesByIdLessThan(afterId, PageAttr.getSliceRequest(PageAttr.PAGE_SIZE));
     }
 
     @Override
-    public Page<User> findByRole(String role, int page) {
-        return this.userRepo.findByRolesName(role, PageAttr.getPageRequest(page));
+    public Slice<UserSlice> findByRoleAfter(String role, Long afterId) {
+        Role.ERole eRole = Role.findERoleByName(role);
+        if (eRole == null) return new SliceImpl<>(new ArrayList<>());
+        return this.userRepo.findSlicesByRoleMaskInAndIdLessThan(Role.masksWith(eRole), afterId, PageAttr.getSliceRequest(PageAttr.PAGE_SIZE));
     }
 
     @Override
     public List<User> findByRole(String role) {
-        return this.userRepo.findByRolesName(role);
+        Role.ERole eRole = Role.findERoleByName(role);
+        if (eRole == null) return new ArrayList<>();
+        return this.userRepo.findByRoleMaskIn(Role.masksWith(eRole));
     }
 
     @Override
     public User findOne(Long id) throws UserNotFoundException {
+        if (id == null) throw new UserNotFoundException("User id can not be null!");
+        return this.userCache.findById(id, () -> this.userRepo.findById(id).orElse(null));
+    }
+
+    // writes start from a fresh copy, cached users are shared with concurrent readers
+    @Override
+    public User findOneForUpdate(Long id) throws UserNotFoundException {
         if (id == null) throw new UserNotFoundException("User id can not be null!");
         return this.userRepo.findById(id).orElse(null);
     }
@@ -129,14 +212,17 @@ public class UserServiceImpl implements UserService {
         if (user.getId() == null) {
             // Encrypt passwprd
             user.setPassword(PasswordUtil.encryptPassword(user.getPassword(), PasswordUtil.EncType.BCRYPT_ENCODER, null));
-            if (user.getPhoneNumber().equals(this.adminPhone1) || user.getPhoneNumber().equals(this.adminPhone2))
-                user.getRoles().add(this.roleService.findRole(Role.ERole.ROLE_ADMIN));
+            if (user.getPhoneNumber().equals(this.adminPhone1) || user.getPhoneNumber().equals(this.adminPhone2)) {
+                // grantRole refuses admin, set the roles as a whole so the role mask follows
+                List<Role> roles = new ArrayList<>(user.getRoles());
+                roles.add(this.roleService.findRole(Role.ERole.ROLE_ADMIN));
+                user.setRoles(roles);
+            }
 
             // flood control
             String ip = NetworkUtil.getClientIP();
-            if (this.registrationAttemptService.isBlocked(ip))
+            if (!this.registrationAttemptService.tryRegister(ip))
                 throw new UserInvalidException("Maximum limit exceed!");
-            this.registrationAttemptService.registrationSuccess(ip);
         }
 //        // sent otp for new user
 //        boolean newUser = user.getId() == null;
@@ -148,7 +234,15 @@ public class UserServiceImpl implements UserService {
 //        } catch (UserNotFoundException e) {
 //            e.printStackTrace();
 //        }
-        return this.userRepo.save(user);
+        boolean newUser = user.getId() == null;
+        try {
+            user = this.userRepo.save(user);
+        } finally {
+            this.userCache.invalidate(user);
+        }
+        this.userSuggestIndex.update(user);
+        if (newUser) this.activityRollupService.recordRegistration(user.getCreated());
+        return user;
     }
 
     private boolean isValid(User user) {
@@ -158,16 +252,17 @@ public class UserServiceImpl implements UserService {
     @Override
     public boolean exists(User user) {
         if (user == null) throw new IllegalArgumentException("user can't be null");
-        return this.userRepo.findByUsername(user.getUsername()) != null
-                || this.userRepo.findByPhoneNumber(user.getPhoneNumber()) != null;
+        return this.userRepo.existsByUsernameOrPhoneNormalized(user.getUsername(), PhoneUtil.normalize(user.getPhoneNumber()));
     }
 
     @Override
     public User getAuthentication(String username, String password) throws UserNotFoundException, NullPasswordException {
         User user = this.findByUsernameOrPhone(username);
-        if (PasswordUtil.matches(user.getPassword(), password))
-            return user;
-        return null;
+        if (!PasswordUtil.matches(user.getPassword(), password))
+            return null;
+        if (PasswordUtil.getPasswordEncoder().upgradeEncoding(user.getPassword()))
+            user = this.updatePasswordHash(user.getId(), PasswordUtil.encryptPassword(password, PasswordUtil.EncType.BCRYPT_ENCODER, null));
+        return user;
     }
 
 
@@ -177,6 +272,9 @@ public class UserServiceImpl implements UserService {
         User user = this.findByPhoneNumber(phone);
         if (user!=null) throw new UserAlreadyExistsException("User already registered with this phone number!");
         if (!this.acValidationTokenService.canGetOTP(phone)) throw new ForbiddenException("Already sent an OTP. Please try agin in two minutes!");
+        // flood control, per phone above and per address here
+        if (!this.rateLimitService.tryAcquire(RateLimitService.Action.OTP, NetworkUtil.getClientIP()))
+            throw new ForbiddenException("Limit exceeded!");
         AcValidationToken acValidationToken = new AcValidationToken();
         acValidationToken.setToken(String.valueOf(SessionIdentifierGenerator.generateOTP()));
         acValidationToken.setTokenValid(true);
@@ -247,18 +345,19 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public User changeRole(Long id, String role) throws UserNotFoundException {
-        User user = this.findOne(id);
+        User user = this.findOneForUpdate(id);
         if (user == null) throw new UserNotFoundException("Could not find user with id " + id);
         Role r = this.roleService.findRole(Role.getERole(role));
         user.changeRole(r);
         user = this.userRepo.save(user);
+        this.userCache.invalidate(user);
         SecurityConfig.updateAuthentication(user);
         return user;
     }
 
     @Override
     public User changePassword(Long id, String currentPassword, String newPassword) throws NullPasswordException, UserNotFoundException, InvalidException, ForbiddenException {
-        User user = this.findOne(id);
+        User user = this.findOneForUpdate(id);
         if (user == null) throw new UserNotFoundException("Could not find user with id " + id);
 
         if (!PasswordUtil.matches(user.getPassword(), currentPassword))
@@ -267,6 +366,7 @@ public class UserServiceImpl implements UserService {
         if (newPassword.length() < 6) throw new InvalidException("Password invalid");
         user.setPassword(PasswordUtil.encryptPassword(newPassword, PasswordUtil.EncType.BCRYPT_ENCODER, null));
         user = this.userRepo.save(user);
+        this.userCache.invalidate(user);
         return user;
     }
 
@@ -276,18 +376,32 @@ public class UserServiceImpl implements UserService {
         if (currentUser == null || !currentUser.isAdmin())
             throw new ForbiddenException("You are not authorised to do this action.");
 
-        User user = this.findOne(id);
+        User user = this.findOneForUpdate(id);
         if (user == null) throw new UserNotFoundException("Could not find user with id " + id);
 
         if (newPassword.length() < 6) throw new InvalidException("Password invalid");
         user.setPassword(PasswordUtil.encryptPassword(newPassword, PasswordUtil.EncType.BCRYPT_ENCODER, null));
         user = this.userRepo.save(user);
+        this.userCache.invalidate(user);
+        return user;
+    }
+
+    @Override
+    public User updatePasswordHash(Long id, String encodedPassword) throws UserNotFoundException {
+        if (encodedPassword == null) throw new IllegalArgumentException("Password can not be null!");
+        User user = this.findOneForUpdate(id);
+        if (user == null) throw new UserNotFoundException("Could not find user with id " + id);
+        user.setPassword(encodedPassword);
+        user = this.userRepo.save(user);
+        this.userCache.invalidate(user);
         return user;
     }
 
     @Override
     public void handlePasswordResetRequest(String username) throws UserNotFoundException, ForbiddenException, UnknownException {
-        User user = this.findByUsername(username);
+        if (!this.rateLimitService.tryAcquire(RateLimitService.Action.PASSWORD_RESET, NetworkUtil.getClientIP()))
+            throw new ForbiddenException("Limit exceeded!");
+        User user = this.findByUsernameOrPhone(username);
         if (this.acValidationTokenService.isLimitExceeded(user))
             throw new ForbiddenException("Limit exceeded!");
 
@@ -306,11 +420,12 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public User setRoles(Long id, String[] roleNames) throws UserNotFoundException, UserAlreadyExistsException, NullPasswordException, UserInvalidException {
-        User user = this.findOne(id);
+        User user = this.findOneForUpdate(id);
         boolean isAdmin = user.isAdmin(); // check if user admin
-        user.getRoles().clear();
+        List<Role> roles = new ArrayList<>();
         if (isAdmin)  // set admin role explicitly after clearing roles
-            user.getRoles().add(this.roleService.findRole(Role.ERole.ROLE_ADMIN));
+            roles.add(this.roleService.findRole(Role.ERole.ROLE_ADMIN));
+        user.setRoles(roles);
         // add roles
         for (String roleName : roleNames) {
             Role role = this.roleService.findRole(Role.getERoleFromRoleName(roleName));
@@ -320,5 +435,89 @@ public class UserServiceImpl implements UserService {
         return this.save(user);
     }
 
+    @Override
+    @Transactional
+    public List<UserSlice> setRoles(Collection<Long> ids, Collection<String> roleNames) throws InvalidException {
+        if (roleNames == null || roleNames.isEmpty()) throw new InvalidException("Roles can not be empty!");
+        List<UserSlice> users = this.findForBulkUpdate(ids);
+        if (users.isEmpty()) return users;
+
+        // same rules as setRoles(id, roles): admin is never granted here and stays with those who have it
+        EnumSet<Role.ERole> eRoles = EnumSet.noneOf(Role.ERole.class);
+        for (String roleName : roleNames) eRoles.add(Role.getERoleFromRoleName(roleName));
+        eRoles.remove(Role.ERole.ROLE_ADMIN);
+        int mask = 0;
+        for (Role.ERole eRole : eRoles) mask |= Role.maskOf(eRole);
+
+        List<Long> userIds = idsOf(users);
+        // what BaseEntity sets on update, the rows are not loaded as entities
+        User currentUser = SecurityConfig.getCurrentUser();
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", userIds)
+                .addValue("adminRoleId", this.roleService.findRole(Role.ERole.ROLE_ADMIN).getId())
+                .addValue("adminMask", Role.maskOf(Role.ERole.ROLE_ADMIN))
+                .addValue("mask", mask)
+                .addValue("lastUpdated", new Date())
+                .addValue("updatedBy", currentUser == null ? null : currentUser.getId());
+        this.jdbcTemplate.update("DELETE FROM m_users_roles WHERE user_id IN (:ids) AND roles_id <> :adminRoleId", params);
+        List<MapSqlParameterSource> rows = new ArrayList<>(userIds.size() * eRoles.size());
+        for (Long userId : userIds)
+            for (Role.ERole eRole : eRoles)
+                rows.add(new MapSqlParameterSource("userId", userId).addValue("roleId", this.roleService.findRole(eRole).getId()));
+        this.jdbcTemplate.batchUpdate("INSERT INTO m_users_roles (user_id, roles_id) VALUES (:userId, :roleId)", rows.toArray(new MapSqlParameterSource[0]));
+        this.jdbcTemplate.update("UPDATE m_users SET role_mask = (role_mask & :adminMask) | :mask, " +
+                "last_updated = :lastUpdated, updated_by_id = :updatedBy WHERE id IN (:ids)", params);
+        for (UserSlice user : users) user.setRoleMask((user.getRoleMask() & Role.maskOf(Role.ERole.ROLE_ADMIN)) | mask);
+
+        this.userCache.invalidate(userIds);
+        this.revokeTokensAfterCommit(users);
+        return users;
+    }
+
+    @Override
+    @Transactional
+    public List<UserSlice> setEnabled(Collection<Long> ids, boolean enabled) throws InvalidException {
+        List<UserSlice> users = this.findForBulkUpdate(ids);
+        if (users.isEmpty()) return users;
+        List<Long> userIds = idsOf(users);
+        this.userRepo.setEnabledByIdIn(userIds, enabled, new Date(), SecurityConfig.getCurrentUser());
+        for (UserSlice user : users) user.setEnabled(enabled);
+        this.userCache.invalidate(userIds);
+        this.revokeTokensAfterCommit(users);
+        return users;
+    }
+
+    // tokens, stored or signed, carry the authorities and enabled flag of the time they were issued. Revoked once the
+    // change is committed, so a token refreshed in between is not issued from the old row.
+    private void revokeTokensAfterCommit(List<UserSlice> users) {
+        List<String> usernames = new ArrayList<>(users.size());
+        for (UserSlice user : users) usernames.add(user.getUsername());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.tokenService.revokeAuthentications(usernames);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                tokenService.revokeAuthentications(usernames);
+            }
+        });
+    }
+
+    // the users among ids that exist, unknown ids are ignored
+    private List<UserSlice> findForBulkUpdate(Collection<Long> ids) throws InvalidException {
+        if (ids == null || ids.isEmpty()) throw new InvalidException("User ids can not be empty!");
+        Set<Long> userIds = new HashSet<>(ids);
+        userIds.remove(null);
+        if (userIds.size() > this.bulkMaxIds)
+            throw new InvalidException("Can not update more than " + this.bulkMaxIds + " users at once!");
+        if (userIds.isEmpty()) return new ArrayList<>();
+        return this.userRepo.findSlicesByIdIn(userIds);
+    }
+
+    private static List<Long> idsOf(List<UserSlice> users) {
+        List<Long> ids = new ArrayList<>(users.size());
+        for (UserSlice user : users) ids.add(user.getUserId());
+        return ids;
+    }
 
 }
@@ -0,0 +1,325 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.commons.utils.PhoneUtil;
+import com.example.webservice.entities.User;
+import com.example.webservice.entities.pojo.UserSuggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Prefix autocomplete over usernames, names (whole and per word) and normalized phone numbers.
+ * The index is an immutable snapshot of sorted arrays: the users ordered by id, and the terms of all users packed
+ * into one char array in sorted order, each pointing at its user by position. A lookup is a binary search for the
+ * prefix and a scan that stops after k distinct users. Users saved after the snapshot was built are kept in a small
+ * map of changes that takes precedence over it, and are merged into a new snapshot once there are enough of them.
+ * Snapshots are swapped in whole, readers take no lock.
+ */
+@Service
+public class UserSuggestIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserSuggestIndex.class);
+    // changes are scanned by every lookup until they are merged
+    private static final int MERGE_THRESHOLD = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, Change> changes = new ConcurrentHashMap<>();
+    // held to merge changes into the snapshot and to swap in a rebuilt one
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // while m_users is read for a rebuild, changes are kept so none of them is lost if the read missed it
+    private boolean building;
+
+    @Autowired
+    public UserSuggestIndex(DataSource dataSource, @Value("${export.fetchSize}") int fetchSize) {
+        // streams m_users row by row, like the exports
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void build() {
+        long start = System.currentTimeMillis();
+        this.setBuilding(true);
+        try {
+            Map<Long, UserSuggestion> users = new HashMap<>();
+            this.jdbcTemplate.query("SELECT id, name, username, phone_number FROM m_users", (RowCallbackHandler) rs ->
+                    users.put(rs.getLong(1), new UserSuggestion(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4))));
+            Snapshot rebuilt = Snapshot.EMPTY.merge(users.values());
+            this.lock.lock();
+            try {
+                this.snapshot = rebuilt;
+                this.building = false;
+            } finally {
+                this.lock.unlock();
+            }
+            LOGGER.info("Indexed {} users for suggestions in {} ms", rebuilt.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not build the user suggestion index", e);
+            this.setBuilding(false);
+        }
+        this.mergeChanges();
+    }
+
+    public void update(User user) {
+        if (user == null || user.getId() == null) return;
+        UserSuggestion suggestion = new UserSuggestion(user);
+        this.changes.put(suggestion.getUserId(), new Change(suggestion));
+        if (this.changes.size() >= MERGE_THRESHOLD) this.mergeChanges();
+    }
+
+    public List<UserSuggestion> suggest(String prefix, int limit) {
+        List<UserSuggestion> suggestions = new ArrayList<>();
+        if (prefix == null || limit <= 0) return suggestions;
+        String phonePrefix = PhoneUtil.normalizePrefix(prefix);
+        String term = phonePrefix != null ? phonePrefix : normalize(prefix);
+        if (term.isEmpty()) return suggestions;
+
+        // ordered by the term they matched, the snapshot yields them in that order
+        List<Match> matches = new ArrayList<>();
+        Snapshot snapshot = this.snapshot;
+        Set<Long> seen = new HashSet<>();
+        for (int i = snapshot.lowerBound(term); i < snapshot.termCount() && matches.size() < limit && snapshot.startsWith(i, term); i++) {
+            int user = snapshot.owners[i];
+            long id = snapshot.ids[user];
+            if (this.changes.containsKey(id) || !seen.add(id)) continue;
+            matches.add(new Match(snapshot.term(i), snapshot.suggestion(user)));
+        }
+        for (Change change : this.changes.values()) {
+            String matched = change.firstTermStartingWith(term);
+            if (matched != null) matches.add(new Match(matched, change.suggestion));
+        }
+        matches.sort(Comparator.comparing((Match match) -> match.term));
+        for (int i = 0; i < matches.size() && i < limit; i++)
+            suggestions.add(matches.get(i).suggestion);
+        return suggestions;
+    }
+
+    private void mergeChanges() {
+        // one merge at a time, changes made meanwhile are left for the next one
+        if (!this.lock.tryLock()) return;
+        try {
+            if (this.building || this.changes.isEmpty()) return;
+            List<Change> merged = new ArrayList<>(this.changes.values());
+            List<UserSuggestion> users = new ArrayList<>(merged.size());
+            for (Change change : merged) users.add(change.suggestion);
+            this.snapshot = this.snapshot.merge(users);
+            // a user saved again during the merge keeps the newer change
+            for (Change change : merged) this.changes.remove(change.suggestion.getUserId(), change);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void setBuilding(boolean building) {
+        this.lock.lock();
+        try {
+            this.building = building;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // distinct and sorted
+    private static String[] termsOf(UserSuggestion suggestion) {
+        Set<String> terms = new TreeSet<>();
+        addTerm(terms, suggestion.getUsername());
+        String phone = PhoneUtil.normalize(suggestion.getPhoneNumber());
+        if (phone != null) terms.add(phone);
+        if (suggestion.getName() != null) {
+            addTerm(terms, suggestion.getName());
+            for (String word : suggestion.getName().split("\\s+")) addTerm(terms, word);
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    private static void addTerm(Set<String> terms, String value) {
+        if (value == null) return;
+        String term = normalize(value);
+        if (!term.isEmpty()) terms.add(term);
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new long[0], new String[0], new String[0], new String[0],
+                new char[0], new int[]{0}, new int[0]);
+
+        // users ordered by id
+        private final long[] ids;
+        private final String[] names;
+        private final String[] usernames;
+        private final String[] phoneNumbers;
+        // term i is chars[starts[i]] up to chars[starts[i + 1]], terms are sorted and owners[i] is the position of their user
+        private final char[] chars;
+        private final int[] starts;
+        private final int[] owners;
+
+        private Snapshot(long[] ids, String[] names, String[] usernames, String[] phoneNumbers, char[] chars, int[] starts, int[] owners) {
+            this.ids = ids;
+            this.names = names;
+            this.usernames = usernames;
+            this.phoneNumbers = phoneNumbers;
+            this.chars = chars;
+            this.starts = starts;
+            this.owners = owners;
+        }
+
+        private int size() {
+            return this.ids.length;
+        }
+
+        private int termCount() {
+            return this.owners.length;
+        }
+
+        private UserSuggestion suggestion(int user) {
+            return new UserSuggestion(this.ids[user], this.names[user], this.usernames[user], this.phoneNumbers[user]);
+        }
+
+        private String term(int i) {
+            return new String(this.chars, this.starts[i], this.starts[i + 1] - this.starts[i]);
+        }
+
+        // the first term that is not smaller than value
+        private int lowerBound(String value) {
+            int low = 0, high = this.termCount();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (this.compare(middle, value) < 0) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        // compares term i with value like String.compareTo
+        private int compare(int i, String value) {
+            int start = this.starts[i], length = this.starts[i + 1] - start, common = Math.min(length, value.length());
+            for (int k = 0; k < common; k++) {
+                char c = this.chars[start + k], other = value.charAt(k);
+                if (c != other) return c - other;
+            }
+            return length - value.length();
+        }
+
+        private boolean startsWith(int i, String prefix) {
+            int start = this.starts[i];
+            if (this.starts[i + 1] - start < prefix.length()) return false;
+            for (int k = 0; k < prefix.length(); k++)
+                if (this.chars[start + k] != prefix.charAt(k)) return false;
+            return true;
+        }
+
+        // a new snapshot where the given users, one entry each, are added or replace their earlier entry
+        private Snapshot merge(Collection<UserSuggestion> users) {
+            UserSuggestion[] added = users.toArray(new UserSuggestion[0]);
+            Arrays.sort(added, Comparator.comparing(UserSuggestion::getUserId));
+
+            // both sides are ordered by id, moved holds the new position of every old user or -1 when it is replaced
+            int capacity = this.ids.length + added.length;
+            long[] ids = new long[capacity];
+            String[] names = new String[capacity], usernames = new String[capacity], phoneNumbers = new String[capacity];
+            int[] moved = new int[this.ids.length];
+            List<Term> addedTerms = new ArrayList<>();
+            int size = 0;
+            for (int i = 0, j = 0; i < this.ids.length || j < added.length; size++) {
+                if (j == added.length || (i < this.ids.length && this.ids[i] < added[j].getUserId())) {
+                    ids[size] = this.ids[i];
+                    names[size] = this.names[i];
+                    usernames[size] = this.usernames[i];
+                    phoneNumbers[size] = this.phoneNumbers[i];
+                    moved[i++] = size;
+                } else {
+                    if (i < this.ids.length && this.ids[i] == added[j].getUserId()) moved[i++] = -1;
+                    UserSuggestion user = added[j++];
+                    ids[size] = user.getUserId();
+                    names[size] = user.getName();
+                    usernames[size] = user.getUsername();
+                    phoneNumbers[size] = user.getPhoneNumber();
+                    for (String term : termsOf(user)) addedTerms.add(new Term(term, size));
+                }
+            }
+            addedTerms.sort(Comparator.comparing((Term term) -> term.value));
+
+            // merges the kept terms, already sorted, with the sorted terms of the added users
+            int charCapacity = this.chars.length;
+            for (Term term : addedTerms) charCapacity += term.value.length();
+            char[] chars = new char[charCapacity];
+            int[] starts = new int[this.termCount() + addedTerms.size() + 1];
+            int[] owners = new int[this.termCount() + addedTerms.size()];
+            int count = 0, length = 0, i = 0, j = 0;
+            while (i < this.termCount() || j < addedTerms.size()) {
+                if (i < this.termCount() && moved[this.owners[i]] < 0) {
+                    i++;
+                    continue;
+                }
+                starts[count] = length;
+                if (j == addedTerms.size() || (i < this.termCount() && this.compare(i, addedTerms.get(j).value) <= 0)) {
+                    int start = this.starts[i], termLength = this.starts[i + 1] - start;
+                    System.arraycopy(this.chars, start, chars, length, termLength);
+                    length += termLength;
+                    owners[count] = moved[this.owners[i++]];
+                } else {
+                    Term term = addedTerms.get(j++);
+                    term.value.getChars(0, term.value.length(), chars, length);
+                    length += term.value.length();
+                    owners[count] = term.owner;
+                }
+                count++;
+            }
+            starts[count] = length;
+            return new Snapshot(Arrays.copyOf(ids, size), Arrays.copyOf(names, size), Arrays.copyOf(usernames, size),
+                    Arrays.copyOf(phoneNumbers, size), Arrays.copyOf(chars, length), Arrays.copyOf(starts, count + 1),
+                    Arrays.copyOf(owners, count));
+        }
+    }
+
+    // a user saved since the snapshot was built
+    private static final class Change {
+        private final UserSuggestion suggestion;
+        private final String[] terms;
+
+        private Change(UserSuggestion suggestion) {
+            this.suggestion = suggestion;
+            this.terms = termsOf(suggestion);
+        }
+
+        private String firstTermStartingWith(String prefix) {
+            for (String term : this.terms)
+                if (term.startsWith(prefix)) return term;
+            return null;
+        }
+    }
+
+    private static final class Term {
+        private final String value;
+        private final int owner;
+
+        private Term(String value, int owner) {
+            this.value = value;
+            this.owner = owner;
+        }
+    }
+
+    private static final class Match {
+        private final String term;
+        private final UserSuggestion suggestion;
+
+        private Match(String term, UserSuggestion suggestion) {
+            this.term = term;
+            this.suggestion = suggestion;
+        }
+    }
+}
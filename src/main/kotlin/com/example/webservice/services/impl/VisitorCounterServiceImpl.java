@@ -0,0 +1,119 @@
+package com.example.webservice.services.impl;
+
+import com.example.webservice.entities.Activity;
+import com.example.webservice.entities.Counter;
+import com.example.webservice.repositories.ActivityRepository;
+import com.example.webservice.repositories.CounterRepository;
+import com.example.webservice.services.VisitorCounterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+@Service
+public class VisitorCounterServiceImpl implements VisitorCounterService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisitorCounterServiceImpl.class);
+    private static final String COUNTER_NAME = "total_visitors";
+
+    private final CounterRepository counterRepo;
+    private final ActivityRepository activityRepo;
+    private final JdbcTemplate jdbcTemplate;
+
+    // total = stored total as last read + visits not written yet, the adder keeps concurrent increments off a shared
+    // cache line. Every node adds only its own visits to the stored total, so nodes do not overwrite each other.
+    private final LongAdder pending = new LongAdder();
+    private volatile long seed;
+    // a checkpoint moves written visits from pending to seed, readers retry if they overlap with that move
+    private final StampedLock checkpointLock = new StampedLock();
+
+    @Autowired
+    public VisitorCounterServiceImpl(CounterRepository counterRepo, ActivityRepository activityRepo, JdbcTemplate jdbcTemplate) {
+        this.counterRepo = counterRepo;
+        this.activityRepo = activityRepo;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    private void init() {
+        Counter counter = this.counterRepo.findByName(COUNTER_NAME);
+        if (counter != null) {
+            this.seed = counter.getTotal();
+            return;
+        }
+        // first start after the migration, carry over the total kept on the first activity row
+        Activity firstActivity = this.activityRepo.findFirstBy();
+        this.seed = firstActivity == null || firstActivity.getTotalVisitors() == null ? 0 : firstActivity.getTotalVisitors();
+        try {
+            this.counterRepo.save(new Counter(COUNTER_NAME, this.seed));
+        } catch (DataIntegrityViolationException e) {
+            // another node created it first
+            this.seed = this.counterRepo.findByName(COUNTER_NAME).getTotal();
+        }
+    }
+
+    @Override
+    public long increment() {
+        this.pending.increment();
+        return this.getTotal();
+    }
+
+    @Override
+    public long increment(long count) {
+        this.pending.add(count);
+        return this.getTotal();
+    }
+
+    @Override
+    public long getTotal() {
+        long stamp = this.checkpointLock.tryOptimisticRead();
+        long total = this.seed + this.pending.sum();
+        if (this.checkpointLock.validate(stamp)) return total;
+        stamp = this.checkpointLock.readLock();
+        try {
+            return this.seed + this.pending.sum();
+        } finally {
+            this.checkpointLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${activity.counter.checkpointIntervalMs}")
+    @PreDestroy
+    public synchronized void checkpoint() {
+        long delta = this.pending.sum();
+        long written = 0;
+        try {
+            if (delta != 0) {
+                this.jdbcTemplate.update("UPDATE counters SET total = total + ? WHERE name = ?", delta, COUNTER_NAME);
+                written = delta;
+            }
+            // picks up the visits of the other nodes
+            List<Long> totals = this.jdbcTemplate.queryForList("SELECT total FROM counters WHERE name = ?", Long.class, COUNTER_NAME);
+            this.moveToSeed(totals.isEmpty() ? this.seed + written : totals.get(0), written);
+        } catch (RuntimeException e) {
+            // visits that were written are in the stored total even if it could not be read back
+            if (written != 0) this.moveToSeed(this.seed + written, written);
+            LOGGER.error("Could not checkpoint " + delta + " visits of the counter", e);
+        }
+    }
+
+    // only what was written leaves pending, visits counted meanwhile stay
+    private void moveToSeed(long storedTotal, long written) {
+        long stamp = this.checkpointLock.writeLock();
+        try {
+            this.seed = storedTotal;
+            this.pending.add(-written);
+        } finally {
+            this.checkpointLock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.webservice
+
+import com.example.webservice.entities.Activity
+import com.example.webservice.entities.Promo
+import com.example.webservice.entities.Role
+import com.example.webservice.entities.User
+import com.example.webservice.repositories.ActivityRepository
+import com.example.webservice.repositories.PromoRepository
+import com.example.webservice.repositories.UserRepository
+import org.hibernate.SessionFactory
+import org.hibernate.stat.Statistics
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager
+import org.springframework.data.domain.PageRequest
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.test.context.junit4.SpringRunner
+
+/*
+ * Every row below is created and updated by a different user. List queries must not load those users:
+ * the statement counts only hold while the audit references in BaseEntity stay lazy.
+ * Runs on H2 in MySQL mode with the production dialect, so the repository queries are validated as they are in
+ * production.
+ */
+@RunWith(SpringRunner::class)
+@DataJpaTest(properties = [
+	"spring.datasource.url=jdbc:h2:mem:statementcount;MODE=MySQL;DB_CLOSE_ON_EXIT=FALSE",
+	"spring.datasource.driver-class-name=org.h2.Driver",
+	"spring.datasource.username=sa",
+	"spring.datasource.password=",
+	"spring.jpa.hibernate.ddl-auto=create-drop",
+	"spring.jpa.properties.hibernate.generate_statistics=true"
+])
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ListQueryStatementCountTests {
+
+	@Autowired
+	lateinit var entityManager: TestEntityManager
+	@Autowired
+	lateinit var userRepo: UserRepository
+	@Autowired
+	lateinit var promoRepo: PromoRepository
+	@Autowired
+	lateinit var activityRepo: ActivityRepository
+
+	private lateinit var statistics: Statistics
+	private lateinit var owner: User
+
+	@Before
+	fun setUp() {
+		statistics = entityManager.entityManager.entityManagerFactory.unwrap(SessionFactory::class.java).statistics
+		val role = entityManager.persist(Role(Role.ERole.ROLE_USER))
+		owner = entityManager.persist(user(0, role))
+		for (i in 1..ROWS) {
+			val creator = entityManager.persist(user(i, role))
+			SecurityContextHolder.getContext().authentication = UsernamePasswordAuthenticationToken(creator, null, creator.authorities)
+			entityManager.persist(user(ROWS + i, role))
+			entityManager.persist(Promo().apply { title = "promo $i" })
+			entityManager.persist(Activity().apply { user = owner; url = "/api/v1/promos/$i" })
+		}
+		SecurityContextHolder.clearContext()
+		entityManager.flush()
+		entityManager.clear()
+		statistics.clear()
+	}
+
+	@After
+	fun tearDown() {
+		SecurityContextHolder.clearContext()
+	}
+
+	@Test
+	fun promoSliceIsOneStatement() {
+		val promos = promoRepo.findByIdLessThan(Long.MAX_VALUE, PageRequest.of(0, PAGE_SIZE))
+		assertEquals(ROWS, promos.numberOfElements)
+		assertEquals("promos, nothing else", 1, statistics.prepareStatementCount)
+	}
+
+	@Test
+	fun activitySliceLoadsOnlyItsUser() {
+		val activities = activityRepo.findByUserAndIdLessThan(owner, Long.MAX_VALUE, PageRequest.of(0, PAGE_SIZE))
+		assertEquals(ROWS, activities.numberOfElements)
+		// the user and its roles are one or two statements depending on whether hibernate joins them
+		assertTrue("activities, their user and the user's roles", statistics.prepareStatementCount <= 3)
+	}
+
+	@Test
+	fun userPageLoadsRolesInOneBatch() {
+		val users = userRepo.findAll(PageRequest.of(0, PAGE_SIZE))
+		assertEquals(2 * ROWS + 1, users.numberOfElements)
+		assertEquals("users and one batch of roles", 2, statistics.prepareStatementCount)
+	}
+
+	private fun user(i: Int, role: Role): User = User().apply {
+		name = "user $i"
+		username = "user$i"
+		phoneNumber = "0171000" + (1000 + i)
+		password = "password"
+		roles = mutableListOf(role)
+	}
+
+	companion object {
+		const val ROWS = 5
+		const val PAGE_SIZE = 20
+	}
+}
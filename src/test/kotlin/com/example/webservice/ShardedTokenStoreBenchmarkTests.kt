@@ -0,0 +1,66 @@
+package com.example.webservice
+
+import com.example.webservice.ShardedTokenStoreTests.Companion.CLIENT_ID
+import com.example.webservice.ShardedTokenStoreTests.Companion.authentication
+import com.example.webservice.ShardedTokenStoreTests.Companion.token
+import com.example.webservice.config.security.oauth.ShardedTokenStore
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.slf4j.LoggerFactory
+import org.springframework.security.oauth2.provider.token.TokenStore
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore
+
+/*
+ * Plain timed run of ShardedTokenStore against InMemoryTokenStore with a million live tokens, 100 per user:
+ * storing them, reading every user's tokens, and revoking a tenth of them one by one. Timings are logged, the
+ * assertions only check that both stores end up with the same tokens. -Dbenchmark.tokens changes the count.
+ */
+class ShardedTokenStoreBenchmarkTests {
+
+	private val tokens = Integer.getInteger("benchmark.tokens", 1_000_000)
+	private val users = Math.max(tokens / TOKENS_PER_USER, 1)
+
+	@Test
+	fun shardedStoreAgainstInMemoryStore() {
+		val inMemory = measure("InMemoryTokenStore", InMemoryTokenStore())
+		System.gc()
+		val sharded = ShardedTokenStore(64, 1000)
+		try {
+			assertEquals(inMemory, measure("ShardedTokenStore", sharded))
+		} finally {
+			sharded.shutdown()
+		}
+	}
+
+	// returns the number of tokens left per user, summed
+	private fun measure(name: String, store: TokenStore): Int {
+		val authentications = (0 until users).map { authentication("user$it") }
+
+		var started = System.nanoTime()
+		for (i in 0 until tokens) store.storeAccessToken(token("token-$i", 3_600_000), authentications[i % users])
+		val storeMs = elapsedMs(started)
+
+		started = System.nanoTime()
+		var found = 0
+		for (user in 0 until users) found += store.findTokensByClientIdAndUserName(CLIENT_ID, "user$user").size
+		val findMs = elapsedMs(started)
+		assertEquals(tokens, found)
+
+		started = System.nanoTime()
+		for (i in 0 until tokens step 10) store.removeAccessToken(store.readAccessToken("token-$i"))
+		val revokeMs = elapsedMs(started)
+
+		var left = 0
+		for (user in 0 until users) left += store.findTokensByClientIdAndUserName(CLIENT_ID, "user$user").size
+		LOGGER.info("{}: {} tokens of {} users, store {} ms, find by user {} ms, revoke a tenth {} ms",
+				name, tokens, users, storeMs, findMs, revokeMs)
+		return left
+	}
+
+	private fun elapsedMs(started: Long) = (System.nanoTime() - started) / 1_000_000
+
+	companion object {
+		const val TOKENS_PER_USER = 100
+		private val LOGGER = LoggerFactory.getLogger(ShardedTokenStoreBenchmarkTests::class.java)
+	}
+}
@@ -0,0 +1,95 @@
+package com.example.webservice
+
+import com.example.webservice.config.security.oauth.ShardedTokenStore
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken
+import org.springframework.security.core.authority.SimpleGrantedAuthority
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import org.springframework.security.oauth2.provider.OAuth2Request
+import java.util.Date
+
+class ShardedTokenStoreTests {
+
+	private val store = ShardedTokenStore(8, 10)
+
+	@After
+	fun tearDown() {
+		store.shutdown()
+	}
+
+	@Test
+	fun tokensOfAUserAreIndexedNewestLast() {
+		val authentication = authentication("alice")
+		val tokens = (1..5).map { token("alice-$it", 60_000) }
+		for (token in tokens) store.storeAccessToken(token, authentication)
+		store.storeAccessToken(token("bob-1", 60_000), authentication("bob"))
+
+		assertEquals(tokens.map { it.value }, store.findTokensByClientIdAndUserName(CLIENT_ID, "alice").map { it.value })
+		assertEquals(listOf("bob-1"), store.findTokensByClientIdAndUserName(CLIENT_ID, "bob").map { it.value })
+		assertEquals("alice-5", store.getAccessToken(authentication).value)
+		assertEquals(6, store.getAccessTokenCount())
+	}
+
+	@Test
+	fun removedTokenLeavesEveryIndex() {
+		val authentication = authentication("alice")
+		val tokens = (1..3).map { token("alice-$it", 60_000) }
+		for (token in tokens) store.storeAccessToken(token, authentication)
+
+		store.removeAccessToken(tokens[1])
+
+		assertNull(store.readAccessToken("alice-2"))
+		assertNull(store.readAuthentication("alice-2"))
+		assertEquals(listOf("alice-1", "alice-3"), store.findTokensByClientIdAndUserName(CLIENT_ID, "alice").map { it.value })
+	}
+
+	@Test
+	fun revokingWithTheRefreshTokenRemovesItsAccessToken() {
+		val authentication = authentication("alice")
+		val refreshToken = DefaultOAuth2RefreshToken("refresh-1")
+		val token = token("alice-1", 60_000).apply { this.refreshToken = refreshToken }
+		store.storeRefreshToken(refreshToken, authentication)
+		store.storeAccessToken(token, authentication)
+
+		store.removeAccessTokenUsingRefreshToken(refreshToken)
+		store.removeRefreshToken(refreshToken)
+
+		assertNull(store.readAccessToken("alice-1"))
+		assertNull(store.readRefreshToken("refresh-1"))
+		assertNull(store.getAccessToken(authentication))
+		assertTrue(store.findTokensByClientIdAndUserName(CLIENT_ID, "alice").isEmpty())
+	}
+
+	@Test
+	fun expiredTokensAreDroppedWithTheirIndexes() {
+		val authentication = authentication("alice")
+		store.storeAccessToken(token("short", 50), authentication)
+		store.storeAccessToken(token("long", 60_000), authentication)
+
+		val deadline = System.currentTimeMillis() + 5000
+		while (store.readAccessToken("short") != null && System.currentTimeMillis() < deadline) Thread.sleep(10)
+
+		assertNull(store.readAccessToken("short"))
+		assertEquals(listOf("long"), store.findTokensByClientIdAndUserName(CLIENT_ID, "alice").map { it.value })
+		assertEquals(1, store.getAccessTokenCount())
+	}
+
+	companion object {
+		const val CLIENT_ID = "client"
+
+		fun authentication(username: String): OAuth2Authentication {
+			val authorities = listOf(SimpleGrantedAuthority("ROLE_USER"))
+			val request = OAuth2Request(emptyMap(), CLIENT_ID, authorities, true, setOf("read"), emptySet(), null, emptySet(), emptyMap())
+			return OAuth2Authentication(request, UsernamePasswordAuthenticationToken(username, null, authorities))
+		}
+
+		fun token(value: String, validityMs: Long): DefaultOAuth2AccessToken =
+				DefaultOAuth2AccessToken(value).apply { expiration = Date(System.currentTimeMillis() + validityMs) }
+	}
+}
@@ -0,0 +1,93 @@
+package com.example.webservice
+
+import com.example.webservice.commons.TimingWheel
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/*
+ * The wheel is advanced one tick at a time and, like ShardedTokenStore, items handed over before their deadline
+ * are scheduled again. Every item must come out exactly once, never early and at most one tick late.
+ */
+class TimingWheelTests {
+
+	private class Item(val deadline: Long)
+
+	private val start = 1_000_000L
+
+	@Test
+	fun itemsFireOnTimeFromEveryLevel() {
+		val wheel = TimingWheel<Item>(TICK, start)
+		val deadlines = listOf(
+				start + 500,                    // within the first tick
+				start + 63 * TICK,              // last bucket of level 0
+				start + 64 * TICK,              // first bucket of level 1
+				start + 70 * TICK + 1,          // level 1, rounded up to the next tick
+				start + 2 * 60 * 60 * TICK,     // level 2
+				start + 64L * 64 * 64 * TICK + 7 * TICK // level 3
+		)
+		for (deadline in deadlines) wheel.schedule(Item(deadline), deadline)
+		assertEquals(deadlines.size, wheel.size())
+
+		val fired = run(wheel, deadlines.max()!! + 2 * TICK)
+		assertEquals(deadlines.sorted(), fired.keys.map { it.deadline }.sorted())
+		assertEquals(0, wheel.size())
+	}
+
+	@Test
+	fun higherLevelsCascadeWithoutFiringEarly() {
+		val wheel = TimingWheel<Item>(TICK, start)
+		// spread over levels 0 to 2 so buckets of levels 1 and 2 are handed over while most items are not due
+		val deadlines = (0 until 500).map { start + 1 + it * 37L * TICK + (it % 5) * 211 }
+		for (deadline in deadlines.shuffled(java.util.Random(42))) wheel.schedule(Item(deadline), deadline)
+
+		val fired = run(wheel, deadlines.max()!! + 2 * TICK)
+		assertEquals(deadlines.size, fired.size)
+		assertEquals(0, wheel.size())
+	}
+
+	@Test
+	fun rescheduledItemMovesToItsNewDeadline() {
+		val wheel = TimingWheel<Item>(TICK, start)
+		val first = start + 10 * TICK
+		val later = Item(start + 100 * TICK)
+		// scheduled once too early, like a token whose expiry was extended, it comes back and is put in again
+		wheel.schedule(later, first)
+		val fired = run(wheel, later.deadline + 2 * TICK)
+		assertEquals(1, fired.size)
+		assertTrue(fired.containsKey(later))
+	}
+
+	@Test
+	fun pastDeadlinesFireOnTheNextTick() {
+		val wheel = TimingWheel<Item>(TICK, start)
+		val item = Item(start - 5 * TICK)
+		wheel.schedule(item, item.deadline)
+		val fired = mutableListOf<Item>()
+		wheel.advance(start + TICK, { fired.add(it) })
+		assertEquals(listOf(item), fired)
+	}
+
+	// advances tick by tick up to `until`, returns each item with the time it came out when it was due
+	private fun run(wheel: TimingWheel<Item>, until: Long): Map<Item, Long> {
+		val fired = LinkedHashMap<Item, Long>()
+		var now = start
+		while (now < until) {
+			now += TICK
+			val current = now
+			wheel.advance(current, { item ->
+				if (item.deadline > current) {
+					wheel.schedule(item, item.deadline)
+				} else {
+					assertTrue("fired twice", fired.put(item, current) == null)
+					assertTrue("more than one tick late", current - item.deadline < TICK)
+				}
+			})
+		}
+		return fired
+	}
+
+	companion object {
+		const val TICK = 1000L
+	}
+}